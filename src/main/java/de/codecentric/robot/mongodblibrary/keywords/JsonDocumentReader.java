@@ -0,0 +1,362 @@
+package de.codecentric.robot.mongodblibrary.keywords;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+import de.codecentric.robot.mongodblibrary.MongodbLibraryException;
+
+/**
+ * Streaming reader for JSON documents which reads directly from a {@link Reader} instead of parsing a whole
+ * String like {@link com.mongodb.util.JSON#parse(String)}.
+ *
+ * The input is either an array of documents or a sequence of documents (e.g. one document per row). Like the
+ * mongo shell, the reader accepts unquoted field names and single-quoted strings. The extended JSON types
+ * $oid, $date (milliseconds or ISO-8601) and $numberLong are converted to {@link ObjectId}, {@link Date} and
+ * {@link Long}, all other extended JSON types ($regex, $ref, $uuid, $ts, $code, $minKey and $maxKey) are
+ * converted by {@link JSON#parse(String)} to the same types as before.
+ */
+class JsonDocumentReader {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final List<String> DRIVER_TYPE_KEYS = Arrays.asList("$regex", "$ref", "$uuid", "$ts", "$code",
+			"$minKey", "$maxKey");
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final StringBuilder token = new StringBuilder();
+	private int position;
+	private int limit;
+	private long offset;
+	private boolean inArray;
+	private boolean started;
+
+	JsonDocumentReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Returns the next document or null if there are no more documents.
+	 */
+	DBObject nextDocument() throws IOException {
+		skipWhitespace();
+		if (!started) {
+			started = true;
+			if (peek() == '[') {
+				read();
+				inArray = true;
+				skipWhitespace();
+			}
+		}
+		if (inArray) {
+			if (peek() == ']') {
+				read();
+				inArray = false;
+				skipWhitespace();
+				return nextDocument();
+			}
+			DBObject document = readDocument();
+			skipWhitespace();
+			if (peek() == ',') {
+				read();
+				skipWhitespace();
+				if (peek() == ']') {
+					throw error("unexpected ]");
+				}
+			} else if (peek() != ']') {
+				throw error("expected , or ]");
+			}
+			return document;
+		}
+		if (peek() == -1) {
+			return null;
+		}
+		return readDocument();
+	}
+
+	private DBObject readDocument() throws IOException {
+		Object value = readValue();
+		if (!(value instanceof DBObject)) {
+			throw error("expected document but got " + value);
+		}
+		return (DBObject) value;
+	}
+
+	private Object readValue() throws IOException {
+		skipWhitespace();
+		int c = peek();
+		switch (c) {
+		case '{':
+			return readObject();
+		case '[':
+			return readArray();
+		case '"':
+		case '\'':
+			return readString();
+		case -1:
+			throw error("unexpected end of input");
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				return readNumber();
+			}
+			return readLiteral();
+		}
+	}
+
+	private Object readObject() throws IOException {
+		read();
+		BasicDBObject object = new BasicDBObject();
+		while (true) {
+			skipWhitespace();
+			if (peek() == '}') {
+				// like JSON.parse a comma after the last field is allowed
+				read();
+				return convertExtendedJson(object);
+			}
+			String key = peek() == '"' || peek() == '\'' ? readString() : readUnquotedKey();
+			skipWhitespace();
+			expect(':');
+			object.put(key, readValue());
+			skipWhitespace();
+			int c = read();
+			if (c == '}') {
+				return convertExtendedJson(object);
+			}
+			if (c != ',') {
+				throw error("expected , or }");
+			}
+		}
+	}
+
+	private BasicDBList readArray() throws IOException {
+		read();
+		BasicDBList list = new BasicDBList();
+		skipWhitespace();
+		if (peek() == ']') {
+			read();
+			return list;
+		}
+		while (true) {
+			list.add(readValue());
+			skipWhitespace();
+			int c = read();
+			if (c == ']') {
+				return list;
+			}
+			if (c != ',') {
+				throw error("expected , or ]");
+			}
+			skipWhitespace();
+			if (peek() == ']') {
+				throw error("unexpected ]");
+			}
+		}
+	}
+
+	private String readString() throws IOException {
+		int quote = read();
+		token.setLength(0);
+		while (true) {
+			int c = read();
+			if (c == quote) {
+				return token.toString();
+			}
+			if (c == -1) {
+				throw error("unterminated string");
+			}
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+				case 'b':
+					token.append('\b');
+					break;
+				case 'f':
+					token.append('\f');
+					break;
+				case 'n':
+					token.append('\n');
+					break;
+				case 'r':
+					token.append('\r');
+					break;
+				case 't':
+					token.append('\t');
+					break;
+				case 'u':
+					int codePoint = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(read(), 16);
+						if (digit < 0) {
+							throw error("invalid unicode escape");
+						}
+						codePoint = codePoint * 16 + digit;
+					}
+					token.append((char) codePoint);
+					break;
+				case -1:
+					throw error("unterminated string");
+				default:
+					token.append((char) c);
+				}
+			} else {
+				token.append((char) c);
+			}
+		}
+	}
+
+	private String readUnquotedKey() throws IOException {
+		token.setLength(0);
+		int c = peek();
+		while (c != -1 && c != ':' && !Character.isWhitespace(c)) {
+			token.append((char) read());
+			c = peek();
+		}
+		if (token.length() == 0) {
+			throw error("expected field name");
+		}
+		return token.toString();
+	}
+
+	private Number readNumber() throws IOException {
+		token.setLength(0);
+		boolean floatingPoint = false;
+		int c = peek();
+		while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+			floatingPoint |= c == '.' || c == 'e' || c == 'E';
+			token.append((char) read());
+			c = peek();
+		}
+		String number = token.toString();
+		try {
+			if (floatingPoint) {
+				return Double.parseDouble(number);
+			}
+			long value = Long.parseLong(number);
+			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+				return (int) value;
+			}
+			return value;
+		} catch (NumberFormatException e) {
+			throw error("invalid number " + number);
+		}
+	}
+
+	private Object readLiteral() throws IOException {
+		token.setLength(0);
+		int c = peek();
+		while (c != -1 && Character.isLetter(c)) {
+			token.append((char) read());
+			c = peek();
+		}
+		String literal = token.toString();
+		if (literal.equals("true")) {
+			return Boolean.TRUE;
+		}
+		if (literal.equals("false")) {
+			return Boolean.FALSE;
+		}
+		if (literal.equals("null")) {
+			return null;
+		}
+		if (literal.equals("NaN")) {
+			return Double.NaN;
+		}
+		throw error("unexpected character " + (c == -1 ? "end of input" : String.valueOf((char) c)));
+	}
+
+	private Object convertExtendedJson(BasicDBObject object) {
+		for (String key : DRIVER_TYPE_KEYS) {
+			if (object.containsField(key)) {
+				return JSON.parse(JSON.serialize(object));
+			}
+		}
+		// like JSON.parse, $oid and $date are converted even if the document contains other fields
+		if (object.get("$oid") instanceof String) {
+			return new ObjectId((String) object.get("$oid"));
+		}
+		if (object.size() == 1 && object.get("$numberLong") instanceof String) {
+			return Long.parseLong((String) object.get("$numberLong"));
+		}
+		Object date = object.get("$date");
+		if (date instanceof Number) {
+			return new Date(((Number) date).longValue());
+		}
+		if (date instanceof String) {
+			return parseDate((String) date);
+		}
+		return object;
+	}
+
+	private Date parseDate(String date) {
+		// SimpleDateFormat only understands offsets without colon (+0100) and Z as literal
+		String normalized = date.replaceFirst("([+-]\\d\\d):(\\d\\d)$", "$1$2").replaceFirst("Z$", "+0000");
+		String[] patterns = {"yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ssZ"};
+		for (String pattern : patterns) {
+			SimpleDateFormat format = new SimpleDateFormat(pattern);
+			format.setTimeZone(TimeZone.getTimeZone("UTC"));
+			format.setLenient(false);
+			try {
+				return format.parse(normalized);
+			} catch (ParseException e) {
+				// try the next pattern
+			}
+		}
+		throw error("invalid date " + date);
+	}
+
+	private void expect(char expected) throws IOException {
+		if (read() != expected) {
+			throw error("expected " + expected);
+		}
+	}
+
+	private void skipWhitespace() throws IOException {
+		int c = peek();
+		while (c != -1 && Character.isWhitespace(c)) {
+			read();
+			c = peek();
+		}
+	}
+
+	private int peek() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position];
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		offset++;
+		return buffer[position++];
+	}
+
+	private boolean fill() throws IOException {
+		limit = reader.read(buffer, 0, buffer.length);
+		position = 0;
+		if (limit <= 0) {
+			limit = 0;
+			return false;
+		}
+		return true;
+	}
+
+	private MongodbLibraryException error(String message) {
+		return new MongodbLibraryException("error parsing json at character " + offset + ": " + message);
+	}
+}
@@ -0,0 +1,164 @@
+package de.codecentric.robot.mongodblibrary.keywords;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import de.codecentric.robot.mongodblibrary.MongodbLibraryException;
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.Paths;
+import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.Platform;
+import de.flapdoodle.embed.process.extract.Extractors;
+import de.flapdoodle.embed.process.store.IArtifactStore;
+
+/**
+ * Artifact store which provides the mongod executable from a local archive or an already extracted
+ * MongoDB distribution instead of downloading it.
+ *
+ * Executables from archives are extracted into a cache directory named after the SHA-1 checksum of the
+ * archive, so every JVM using the same cache directory reuses the extracted executable. The checksum of
+ * the executable is stored next to it and verified before it is reused.
+ */
+class LocalArtifactStore implements IArtifactStore {
+
+	private static final String CHECKSUM_SUFFIX = ".sha1";
+
+	private final File source;
+	private final File cacheDir;
+
+	LocalArtifactStore(File source, File cacheDir) {
+		this.source = source;
+		this.cacheDir = cacheDir;
+	}
+
+	public boolean checkDistribution(Distribution distribution) throws IOException {
+		return source.exists();
+	}
+
+	public File extractExe(Distribution distribution) throws IOException {
+		String executableName = new Paths(Command.MongoD).executableFilename(distribution);
+		if (source.isDirectory()) {
+			return findExecutable(executableName);
+		}
+		File archiveCacheDir = new File(cacheDir, checksum(source));
+		File executable = new File(archiveCacheDir, executableName);
+		File executableChecksum = new File(archiveCacheDir, executableName + CHECKSUM_SUFFIX);
+		if (isValid(executable, executableChecksum)) {
+			return executable;
+		}
+		if (!archiveCacheDir.isDirectory() && !archiveCacheDir.mkdirs()) {
+			throw new MongodbLibraryException("error creating cache directory " + archiveCacheDir);
+		}
+		// extract into temporary files which are renamed afterwards, so other JVMs never see a partial executable
+		File extracted = File.createTempFile(executableName, ".tmp", archiveCacheDir);
+		File extractedChecksum = File.createTempFile(executableName + CHECKSUM_SUFFIX, ".tmp", archiveCacheDir);
+		boolean moved = false;
+		try {
+			Extractors.getExtractor(getArchiveType()).extract(new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).build(),
+					source, extracted, new Paths(Command.MongoD).executeablePattern(distribution));
+			// the extractor leaves the temporary file empty if the archive contains no executable
+			if (extracted.length() == 0 || !extracted.canExecute()) {
+				throw new MongodbLibraryException(executableName + " not found in " + source);
+			}
+			FileWriter writer = new FileWriter(extractedChecksum);
+			try {
+				writer.write(checksum(extracted));
+			} finally {
+				writer.close();
+			}
+			// renameTo replaces the target atomically on POSIX, so a cached executable is never missing for other JVMs
+			if (!extracted.renameTo(executable)) {
+				if (isValid(executable, executableChecksum)) {
+					// another JVM has published the executable in the meantime
+					return executable;
+				}
+				replace(extracted, executable);
+			}
+			if (!extractedChecksum.renameTo(executableChecksum)) {
+				replace(extractedChecksum, executableChecksum);
+			}
+			moved = true;
+		} finally {
+			if (!moved) {
+				extracted.delete();
+				extractedChecksum.delete();
+			}
+		}
+		return executable;
+	}
+
+	public void removeExecutable(Distribution distribution, File executable) {
+		// the executable stays in the cache or in the given directory
+	}
+
+	private boolean isValid(File executable, File executableChecksum) throws IOException {
+		return executable.isFile() && executableChecksum.isFile()
+				&& checksum(executable).equals(FileUtils.readFileToString(executableChecksum).trim());
+	}
+
+	private void replace(File file, File target) {
+		// on Windows renameTo fails if the target exists
+		target.delete();
+		if (!file.renameTo(target)) {
+			throw new MongodbLibraryException("error moving extracted executable to " + target);
+		}
+	}
+
+	private File findExecutable(String executableName) {
+		File[] candidates = {new File(source, "bin" + File.separator + executableName), new File(source, executableName)};
+		for (File candidate : candidates) {
+			if (candidate.isFile()) {
+				return candidate;
+			}
+		}
+		throw new MongodbLibraryException(executableName + " not found in " + source);
+	}
+
+	private ArchiveType getArchiveType() {
+		String name = source.getName().toLowerCase();
+		if (name.endsWith(".zip")) {
+			return ArchiveType.ZIP;
+		}
+		if (name.endsWith(".tbz2") || name.endsWith(".tar.bz2")) {
+			return ArchiveType.TBZ2;
+		}
+		if (name.endsWith(".tgz") || name.endsWith(".tar.gz")) {
+			return ArchiveType.TGZ;
+		}
+		return Platform.detect() == Platform.Windows ? ArchiveType.ZIP : ArchiveType.TGZ;
+	}
+
+	private static String checksum(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new MongodbLibraryException("SHA-1 is not supported", e);
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[65536];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
@@ -6,29 +6,60 @@ import static java.lang.Integer.parseInt;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
+import com.mongodb.AggregationOutput;
 import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
 import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteResult;
 import com.mongodb.util.JSON;
 
 import de.codecentric.robot.mongodblibrary.MongodbLibraryException;
+import de.flapdoodle.embed.mongo.Command;
 import de.flapdoodle.embed.mongo.MongodExecutable;
 import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.AbstractMongoConfig.Net;
+import de.flapdoodle.embed.mongo.config.AbstractMongoConfig.Storage;
+import de.flapdoodle.embed.mongo.config.AbstractMongoConfig.Timeout;
 import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.RuntimeConfigBuilder;
 import de.flapdoodle.embed.process.distribution.GenericVersion;
 
 /**
@@ -43,9 +74,42 @@ public class MongodbLibrary {
 
 	private static final int MONGO_DEFAULT_PORT = 27020;
 
+	private static final String RAM_DISK_DIR = "/dev/shm";
+
+	private static final long REPLICA_SET_INITIATE_TIMEOUT = 60000;
+
+	private static final long REPLICA_SET_POLL_INTERVAL = 500;
+
+	private static final int REPLICA_SET_OPLOG_SIZE = 50;
+
+	private static final String[] SERVER_STATUS_SECTIONS = {"opcounters", "extra_info", "globalLock", "locks", "mem", 
+		"connections", "network", "cursors"};
+
+	private static final String[] COLLECTION_STATS_FIELDS = {"count", "size", "storageSize", "totalIndexSize", "nindexes"};
+
+	private static final List<String> LOAD_OPERATIONS = Arrays.asList("insert", "find", "update", "remove");
+
+	private static final long RESET_DROP_THRESHOLD = 10000;
+
+	private static final int RESET_THREADS = 8;
+
+	private static final int BULK_WRITE_THREADS = 8;
+
+	private static final int BULK_INSERT_BATCH_SIZE = 1000;
+
+	private static final int IMPORT_BATCH_SIZE = 1000;
+
+	private static final int IMPORT_THREADS = 4;
+
 	private MongoClient mongoClient;
 	private DB db;
 	private MongodExecutable mongodExecutable;
+	private File ramDiskDatabaseDir;
+	private List<MongodExecutable> embeddedNodes = new ArrayList<MongodExecutable>();
+	private DB profiledDb;
+	private Date profilingStart;
+	private DBObject previousProfiling;
+	private Map<String, Map<String, Object>> statsSnapshots = new HashMap<String, Map<String, Object>>();
 
 	/**
 	 * starts a MongoDB-Server in the given version
@@ -80,6 +144,82 @@ public class MongodbLibrary {
 		mongodExecutable.start();
 	}
 	
+	/**
+	 * starts a MongoDB-Server in the given version on the given port and stores the data files in the given directory.
+	 * The embedded server always runs without journal, with small files and without preallocation.
+	 * 
+	 * Arguments: 
+	 * - _version_: MongoDB-Version
+	 * - _port_: port to use
+	 * - _databaseDir_: directory for the data files, it is created if it does not exist
+	 * 
+	 * Example: 
+	 * | Startup Embedded With Database Directory | 2.4.1 | 27042 | /mnt/ramdisk/mongodb |
+	 */
+	public void startupEmbeddedWithDatabaseDirectory(String version, String port, String databaseDir) throws IOException {
+		MongodConfig mongodConfig = new MongodConfig(new GenericVersion(version), new Net(parseInt(port), localhostIsIPv6()),
+				new Storage(databaseDir, null, 0), new Timeout());
+		MongodStarter runtime = MongodStarter.getDefaultInstance();
+		mongodExecutable = runtime.prepare(mongodConfig);
+		mongodExecutable.start();
+	}
+
+	/**
+	 * starts a MongoDB-Server in the given version on the given port and stores the data files in a new directory
+	 * in the RAM-backed file system /dev/shm, which is deleted by `Shutdown Embedded`. Falls back to the temp directory 
+	 * if /dev/shm is not available. The embedded server always runs without journal, with small files and without 
+	 * preallocation.
+	 * 
+	 * Arguments: 
+	 * - _version_: MongoDB-Version
+	 * - _port_: port to use
+	 * 
+	 * Example: 
+	 * | Startup Embedded In Memory | 2.4.1 | 27042 |
+	 */
+	public void startupEmbeddedInMemory(String version, String port) throws IOException {
+		File ramDisk = new File(RAM_DISK_DIR);
+		File parent = ramDisk.isDirectory() && ramDisk.canWrite() ? ramDisk : new File(System.getProperty("java.io.tmpdir"));
+		ramDiskDatabaseDir = File.createTempFile("embedmongo-db-", "", parent);
+		if (!ramDiskDatabaseDir.delete() || !ramDiskDatabaseDir.mkdir()) {
+			throw new MongodbLibraryException("error creating database directory " + ramDiskDatabaseDir);
+		}
+		boolean started = false;
+		try {
+			startupEmbeddedWithDatabaseDirectory(version, port, ramDiskDatabaseDir.getAbsolutePath());
+			started = true;
+		} finally {
+			if (!started) {
+				deleteRamDiskDatabaseDir();
+			}
+		}
+	}
+
+	/**
+	 * starts a MongoDB-Server in the given version on the given port without downloading MongoDB. The mongod executable
+	 * is taken from a local MongoDB archive (.tgz, .tbz2 or .zip) or from a directory with an extracted distribution. 
+	 * Executables from archives are extracted once into the given cache directory, which can be shared by several JVMs.
+	 * Cached executables are verified with a checksum before they are used.
+	 * 
+	 * Arguments: 
+	 * - _version_: MongoDB-Version
+	 * - _port_: port to use
+	 * - _distribution_: the archive or the directory of the MongoDB distribution
+	 * - _cacheDir_: the directory for extracted executables
+	 * 
+	 * Example: 
+	 * | Startup Embedded From Distribution | 2.4.1 | 27042 | /opt/mongodb/mongodb-linux-x86_64-2.4.1.tgz | /var/cache/embedmongo |
+	 * | Startup Embedded From Distribution | 2.4.1 | 27042 | /opt/mongodb/mongodb-linux-x86_64-2.4.1 | /var/cache/embedmongo |
+	 */
+	public void startupEmbeddedFromDistribution(String version, String port, String distribution, String cacheDir) 
+			throws IOException {
+		MongodConfig mongodConfig = new MongodConfig(new GenericVersion(version), parseInt(port), localhostIsIPv6());
+		MongodStarter runtime = MongodStarter.getInstance(new RuntimeConfigBuilder().defaults(Command.MongoD)
+				.artifactStore(new LocalArtifactStore(new File(distribution), new File(cacheDir))).build());
+		mongodExecutable = runtime.prepare(mongodConfig);
+		mongodExecutable.start();
+	}
+
 	/**
 	 * stops the previously started MongoDB-Server (counter-part to the keywords: `Startup Embedded` and `Startup Embedded On Port`)
 	 * 
@@ -90,6 +230,167 @@ public class MongodbLibrary {
 		if (mongodExecutable != null) {
 			mongodExecutable.stop();
 		}
+		deleteRamDiskDatabaseDir();
+	}
+
+	private void deleteRamDiskDatabaseDir() {
+		if (ramDiskDatabaseDir == null) {
+			return;
+		}
+		try {
+			FileUtils.deleteDirectory(ramDiskDatabaseDir);
+		} catch (IOException e) {
+			// the server is stopped anyway, a leftover directory must not fail the test teardown
+			System.out.println("*WARN* error deleting database directory " + ramDiskDatabaseDir + ": " + e.getMessage());
+		}
+		ramDiskDatabaseDir = null;
+	}
+
+	/**
+	 * starts the given number of MongoDB-Servers in the given version as a replica set on consecutive ports
+	 * and initiates the replica set. The servers are started in parallel, the keyword returns as soon as
+	 * the replica set has a primary and all other members are secondaries. Every member uses an oplog of 50 MB 
+	 * instead of the default of 5% of the free disk space, which is allocated at startup.
+	 * 
+	 * Arguments: 
+	 * - _version_: MongoDB-Version
+	 * - _replicaSetName_: name of the replica set
+	 * - _port_: port of the first member, the other members use the following ports
+	 * - _nodes_: number of members to start
+	 * 
+	 * Example: 
+	 * | Startup Embedded Replica Set | 2.4.1 | rs0 | 27030 | 3 |
+	 */
+	public void startupEmbeddedReplicaSet(String version, String replicaSetName, String port, String nodes) throws IOException {
+		startupEmbeddedNodes(version, replicaSetName, parseInt(port), parseInt(nodes));
+		initiateReplicaSet(replicaSetName, parseInt(port), parseInt(nodes));
+	}
+
+	/**
+	 * starts the given number of independent MongoDB-Servers in the given version on consecutive ports.
+	 * The servers are started in parallel.
+	 * 
+	 * Arguments: 
+	 * - _version_: MongoDB-Version
+	 * - _port_: port of the first server, the other servers use the following ports
+	 * - _nodes_: number of servers to start
+	 * 
+	 * Example: 
+	 * | Startup Embedded Nodes | 2.4.1 | 27030 | 3 |
+	 */
+	public void startupEmbeddedNodes(String version, String port, String nodes) throws IOException {
+		startupEmbeddedNodes(version, null, parseInt(port), parseInt(nodes));
+	}
+
+	/**
+	 * stops all MongoDB-Servers in parallel which were started by the keywords `Startup Embedded Replica Set` 
+	 * and `Startup Embedded Nodes`
+	 * 
+	 * Example: 
+	 * | Shutdown Embedded Nodes |
+	 */
+	public void shutdownEmbeddedNodes() {
+		if (embeddedNodes.isEmpty()) {
+			return;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final MongodExecutable node : embeddedNodes) {
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					node.stop();
+					return null;
+				}
+			});
+		}
+		embeddedNodes.clear();
+		runInParallel(tasks, tasks.size());
+	}
+
+	private void startupEmbeddedNodes(String version, String replicaSetName, int port, int nodes) throws IOException {
+		MongodStarter runtime = MongodStarter.getDefaultInstance();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nodes; i++) {
+			MongodConfig mongodConfig = new MongodConfig(new GenericVersion(version), new Net(port + i, localhostIsIPv6()),
+					new Storage(null, replicaSetName, replicaSetName != null ? REPLICA_SET_OPLOG_SIZE : 0), new Timeout());
+			// preparing extracts the binaries, so it is done one by one before the processes are started concurrently
+			final MongodExecutable node = runtime.prepare(mongodConfig);
+			embeddedNodes.add(node);
+			tasks.add(new Callable<Void>() {
+				public Void call() throws IOException {
+					node.start();
+					return null;
+				}
+			});
+		}
+		runInParallel(tasks, nodes);
+	}
+
+	private void initiateReplicaSet(String replicaSetName, int port, int nodes) {
+		BasicDBList members = new BasicDBList();
+		for (int i = 0; i < nodes; i++) {
+			members.add(new BasicDBObject("_id", i).append("host", "localhost:" + (port + i)));
+		}
+		MongoClient client = null;
+		try {
+			client = new MongoClient(new ServerAddress("localhost", port));
+			DB admin = client.getDB("admin");
+			admin.command(new BasicDBObject("replSetInitiate", 
+					new BasicDBObject("_id", replicaSetName).append("members", members))).throwOnError();
+			long deadline = System.currentTimeMillis() + REPLICA_SET_INITIATE_TIMEOUT;
+			while (!isReplicaSetReady(admin.command("replSetGetStatus"), nodes)) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new MongodbLibraryException("replica set " + replicaSetName + " was not ready after " 
+							+ REPLICA_SET_INITIATE_TIMEOUT + " ms");
+				}
+				Thread.sleep(REPLICA_SET_POLL_INTERVAL);
+			}
+		} catch (UnknownHostException e) {
+			throw new MongodbLibraryException("error connecting mongodb", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MongodbLibraryException("interrupted while initiating replica set", e);
+		} finally {
+			if (client != null) {
+				client.close();
+			}
+		}
+	}
+
+	private boolean isReplicaSetReady(CommandResult status, int nodes) {
+		if (!status.ok() || !(status.get("members") instanceof List)) {
+			return false;
+		}
+		List<?> members = (List<?>) status.get("members");
+		int ready = 0;
+		for (Object member : members) {
+			Object state = ((DBObject) member).get("state");
+			// 1 = PRIMARY, 2 = SECONDARY
+			if (state instanceof Number && (((Number) state).intValue() == 1 || ((Number) state).intValue() == 2)) {
+				ready++;
+			}
+		}
+		return ready == nodes;
+	}
+
+	private static <T> List<T> runInParallel(List<Callable<T>> tasks, int threads) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			List<T> ret = new ArrayList<T>();
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				ret.add(future.get());
+			}
+			return ret;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MongodbLibraryException("interrupted while waiting for parallel tasks", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MongodbLibraryException) {
+				throw (MongodbLibraryException) e.getCause();
+			}
+			throw new MongodbLibraryException(e.getCause().getMessage(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
 	}
 	
 	/**
@@ -147,7 +448,213 @@ public class MongodbLibrary {
 	}
 	
 	/**
-	 * Imports the documents from the given file into the given collection.
+	 * Executes many write operations on the given collection and returns the number of inserted (_insertedCount_), 
+	 * matched (_matchedCount_), modified (_modifiedCount_), upserted (_upsertedCount_) and deleted (_deletedCount_) 
+	 * documents. Consecutive inserts are sent as batches. Ordered operations are executed one after another and stop 
+	 * at the first error, unordered operations are executed in parallel and continue after errors. The keyword fails 
+	 * if an operation failed.
+	 * 
+	 * Every operation is a document with the field _op_ and the fields of the operation:
+	 * - _insert_: _document_
+	 * - _update_: _query_, _update_, optional _upsert_ and _multi_ (default: true)
+	 * - _upsert_: _query_, _update_ (updates one document or inserts it)
+	 * - _replace_: _query_, _document_, optional _upsert_
+	 * - _remove_: _query_ (_delete_ is accepted as well)
+	 * 
+	 * MongoDB up to 2.4 does not distinguish matched and modified documents, so both counts are the same there.
+	 * 
+	 * Arguments: 
+	 * - _collectionName_: the name of the collection
+	 * - _operations_: the operations as JSON array or the file that contains the JSON array
+	 * - _ordered_: true to execute the operations in the given order
+	 * 
+	 * Example:
+	 * | Bulk Write | myCol | [{op : 'upsert', query : {name : 'Max'}, update : {$set : {age : 23}}}, {op : 'remove', query : {age : 40}}] | true |
+	 * | Bulk Write | myCol | /data/migration.json | false |
+	 */
+	public Map<String, Object> bulkWrite(String collectionName, String operations, String ordered) {
+		String json = operations;
+		if (!operations.trim().startsWith("[")) {
+			try {
+				json = IOUtils.toString(new FileReader(operations));
+			} catch (IOException e) {
+				throw new MongodbLibraryException("error reading json-file", e);
+			}
+		}
+		Object parsed = parse(json);
+		if (!(parsed instanceof BasicDBList)) {
+			throw new MongodbLibraryException("operations must be a JSON array");
+		}
+		final List<DBObject> allOperations = new ArrayList<DBObject>();
+		for (Object operation : (BasicDBList) parsed) {
+			allOperations.add((DBObject) operation);
+		}
+		final DBCollection collection = db.getCollection(collectionName);
+
+		BulkWriteResult result;
+		if (Boolean.parseBoolean(ordered)) {
+			result = executeBulkWrite(collection, allOperations, 0, true);
+		} else {
+			int chunkSize = Math.max(1, (allOperations.size() + BULK_WRITE_THREADS - 1) / BULK_WRITE_THREADS);
+			List<Callable<BulkWriteResult>> tasks = new ArrayList<Callable<BulkWriteResult>>();
+			for (int start = 0; start < allOperations.size(); start += chunkSize) {
+				final int offset = start;
+				final List<DBObject> chunk = allOperations.subList(start, Math.min(start + chunkSize, allOperations.size()));
+				tasks.add(new Callable<BulkWriteResult>() {
+					public BulkWriteResult call() {
+						return executeBulkWrite(collection, chunk, offset, false);
+					}
+				});
+			}
+			result = new BulkWriteResult();
+			for (BulkWriteResult chunkResult : runInParallel(tasks, tasks.size())) {
+				result.add(chunkResult);
+			}
+		}
+
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("insertedCount", result.inserted);
+		ret.put("matchedCount", result.matched);
+		ret.put("modifiedCount", result.modified);
+		ret.put("upsertedCount", result.upserted);
+		ret.put("deletedCount", result.deleted);
+		if (!result.errors.isEmpty()) {
+			throw new MongodbLibraryException(result.errors.size() + " operations failed, " + ret + ": " 
+					+ result.errors.subList(0, Math.min(10, result.errors.size())));
+		}
+		return ret;
+	}
+
+	private BulkWriteResult executeBulkWrite(DBCollection collection, List<DBObject> operations, int offset, boolean ordered) {
+		BulkWriteResult result = new BulkWriteResult();
+		int i = 0;
+		while (i < operations.size()) {
+			DBObject operation = operations.get(i);
+			String op = (String) operation.get("op");
+			int next = i + 1;
+			try {
+				if ("insert".equals(op)) {
+					List<DBObject> documents = new ArrayList<DBObject>();
+					documents.add((DBObject) operation.get("document"));
+					while (next < operations.size() && "insert".equals(operations.get(next).get("op")) 
+							&& documents.size() < BULK_INSERT_BATCH_SIZE) {
+						documents.add((DBObject) operations.get(next).get("document"));
+						next++;
+					}
+					// documents without _id get a new one from the driver, only the given ids can exist already
+					Set<Object> existingIds = findExistingIds(collection, documents);
+					try {
+						collection.insert(documents);
+						result.inserted += documents.size();
+					} catch (MongoException e) {
+						if (!insertOneByOne(collection, documents, existingIds, offset + i, ordered, result)) {
+							break;
+						}
+					}
+				} else if ("update".equals(op) || "upsert".equals(op) || "replace".equals(op)) {
+					boolean replace = "replace".equals(op);
+					boolean upsert = "upsert".equals(op) || Boolean.TRUE.equals(operation.get("upsert"));
+					boolean multi = "update".equals(op) && !Boolean.FALSE.equals(operation.get("multi"));
+					WriteResult writeResult = collection.update((DBObject) operation.get("query"), 
+							(DBObject) operation.get(replace ? "document" : "update"), upsert, multi);
+					if (writeResult.getField("upserted") != null) {
+						result.upserted++;
+					} else {
+						result.matched += writeResult.getN();
+						result.modified += writeResult.getN();
+					}
+				} else if ("remove".equals(op) || "delete".equals(op)) {
+					result.deleted += collection.remove((DBObject) operation.get("query")).getN();
+				} else {
+					throw new MongodbLibraryException("unknown operation " + (offset + i) + ": " + op);
+				}
+			} catch (MongoException e) {
+				result.errors.add("operation " + (offset + i) + ": " + e.getMessage());
+				if (ordered) {
+					break;
+				}
+			}
+			i = next;
+		}
+		return result;
+	}
+
+	/**
+	 * Inserts the documents of a failed batch one by one to find the failed documents. The batch stopped at the 
+	 * first failed document, so the documents before it are stored: their _id exists now, did not exist before the 
+	 * batch and is not repeated within the batch. These documents are only counted.
+	 */
+	private boolean insertOneByOne(DBCollection collection, List<DBObject> documents, Set<Object> existingIds, 
+			int offset, boolean ordered, BulkWriteResult result) {
+		Set<Object> storedIds = findExistingIds(collection, documents);
+		Set<Object> batchIds = new HashSet<Object>();
+		int i = 0;
+		while (i < documents.size()) {
+			Object id = documents.get(i).get("_id");
+			if (!storedIds.contains(id) || existingIds.contains(id) || !batchIds.add(id)) {
+				break;
+			}
+			result.inserted++;
+			i++;
+		}
+		for (; i < documents.size(); i++) {
+			try {
+				collection.insert(documents.get(i));
+				result.inserted++;
+			} catch (MongoException e) {
+				result.errors.add("operation " + (offset + i) + ": " + e.getMessage());
+				if (ordered) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private Set<Object> findExistingIds(DBCollection collection, List<DBObject> documents) {
+		BasicDBList ids = new BasicDBList();
+		for (DBObject document : documents) {
+			if (document.get("_id") != null) {
+				ids.add(document.get("_id"));
+			}
+		}
+		Set<Object> existingIds = new HashSet<Object>();
+		if (ids.isEmpty()) {
+			return existingIds;
+		}
+		DBCursor cursor = collection.find(new BasicDBObject("_id", new BasicDBObject("$in", ids)), 
+				new BasicDBObject("_id", 1));
+		try {
+			for (DBObject document : cursor) {
+				existingIds.add(document.get("_id"));
+			}
+		} finally {
+			cursor.close();
+		}
+		return existingIds;
+	}
+
+	private static class BulkWriteResult {
+		private long inserted;
+		private long matched;
+		private long modified;
+		private long upserted;
+		private long deleted;
+		private List<String> errors = new ArrayList<String>();
+
+		private void add(BulkWriteResult other) {
+			inserted += other.inserted;
+			matched += other.matched;
+			modified += other.modified;
+			upserted += other.upserted;
+			deleted += other.deleted;
+			errors.addAll(other.errors);
+		}
+	}
+
+	/**
+	 * Imports the documents from the given file into the given collection. The file contains a single document or an 
+	 * array of documents, all extended JSON types of the MongoDB Java driver and $numberLong are supported.
 	 * 
 	 * Arguments: 
 	 * - _collectionName_: the name of the target collection
@@ -157,44 +664,237 @@ public class MongodbLibrary {
 	 * | Import Documents | myCol | /data/documents.json |
 	 */
 	public void importDocuments(String collectionName, String file) {
+		streamDocuments(collectionName, file);
+	}
+
+	/**
+	 * Imports the documents from the given file into the given collection. This keyword reads the data row-based.
+	 * 
+	 * Arguments: 
+	 * - _collectionName_: the name of the target collection
+	 * - _file_: the file that contains the documents
+	 * 
+	 * Example:
+	 * | Import Documents Row Seperated | myCol | /data/documents.json |
+	 */
+	public void importDocumentsRowSeperated(String collectionName, String file) {
+		streamDocuments(collectionName, file);
+	}
+
+	private void streamDocuments(String collectionName, String file) {
+		DBCollection collection = db.getCollection(collectionName);
+		Reader reader = null;
 		try {
-			String documents = IOUtils.toString(new FileReader(file));
-			DBObject dbObject = (DBObject) parse(documents);
-			if (dbObject instanceof BasicDBList) {
-				Iterator<Object> jsonIterator = ((BasicDBList) dbObject).iterator();
-				while(jsonIterator.hasNext()) {
-					DBObject document = (DBObject) jsonIterator.next();
-					db.getCollection(collectionName).insert(document);
+			reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+			JsonDocumentReader documentReader = new JsonDocumentReader(reader);
+			List<DBObject> batch = new ArrayList<DBObject>();
+			DBObject document;
+			while ((document = documentReader.nextDocument()) != null) {
+				batch.add(document);
+				if (batch.size() == IMPORT_BATCH_SIZE) {
+					collection.insert(batch);
+					batch.clear();
 				}
-			} else {
-				db.getCollection(collectionName).insert(dbObject);
 			}
-			
+			if (!batch.isEmpty()) {
+				collection.insert(batch);
+			}
 		} catch (IOException e) {
 			throw new MongodbLibraryException("error reading json-file", e);
+		} finally {
+			IOUtils.closeQuietly(reader);
 		}
 	}
 
+
 	/**
-	 * Imports the documents from the given file into the given collection. This keyword reads the data row-based.
+	 * Imports all .json files from the given directory, every file into the collection named like the file without 
+	 * the extension. The files are imported in parallel, the keyword returns the import time of every collection 
+	 * in milliseconds.
+	 * 
+	 * Arguments: 
+	 * - _directory_: the directory that contains the files
+	 * 
+	 * Example:
+	 * | ${timings}= | Import Directory | /data/fixtures |
+	 */
+	public Map<String, Object> importDirectory(String directory) {
+		File[] files = new File(directory).listFiles();
+		if (files == null) {
+			throw new MongodbLibraryException("error reading directory " + directory);
+		}
+		List<String> collectionNames = new ArrayList<String>();
+		List<String> paths = new ArrayList<String>();
+		List<BasicDBList> indexes = new ArrayList<BasicDBList>();
+		for (File file : files) {
+			if (file.isFile() && file.getName().endsWith(".json")) {
+				collectionNames.add(file.getName().substring(0, file.getName().length() - ".json".length()));
+				paths.add(file.getPath());
+				indexes.add(new BasicDBList());
+			}
+		}
+		return importInParallel(collectionNames, paths, indexes);
+	}
+
+	/**
+	 * Imports the files listed in the given manifest in parallel and creates the listed indexes after the import 
+	 * of each collection. Relative file paths are resolved against the directory of the manifest. The keyword 
+	 * returns the import time of every collection in milliseconds.
+	 * 
+	 * The manifest contains the field _collections_ with an entry for every file, every entry has the fields
+	 * _collection_, _file_ and optional _indexes_ (with the fields _keys_ and optional _name_ and _unique_).
+	 * The files contain a single document, an array of documents or one document per row.
+	 * 
+	 * Arguments: 
+	 * - _manifest_: the manifest file
+	 * 
+	 * Example:
+	 * | ${timings}= | Import Manifest | /data/fixtures/manifest.json |
+	 * 
+	 * Manifest:
+	 * | { collections : [ {collection : 'users', file : 'users.json', indexes : [{keys : {name : 1}, unique : true}]}, {collection : 'orders', file : 'orders.json'} ] } |
+	 */
+	public Map<String, Object> importManifest(String manifest) {
+		DBObject manifestObject;
+		try {
+			manifestObject = (DBObject) parse(IOUtils.toString(new FileReader(manifest)));
+		} catch (IOException e) {
+			throw new MongodbLibraryException("error reading json-file", e);
+		}
+		if (!(manifestObject.get("collections") instanceof BasicDBList)) {
+			throw new MongodbLibraryException("manifest " + manifest + " does not contain a collections array");
+		}
+		File manifestDirectory = new File(manifest).getAbsoluteFile().getParentFile();
+		List<String> collectionNames = new ArrayList<String>();
+		List<String> paths = new ArrayList<String>();
+		List<BasicDBList> indexes = new ArrayList<BasicDBList>();
+		for (Object entry : (BasicDBList) manifestObject.get("collections")) {
+			DBObject entryObject = (DBObject) entry;
+			String collectionName = (String) entryObject.get("collection");
+			String path = (String) entryObject.get("file");
+			if (collectionName == null || path == null) {
+				throw new MongodbLibraryException("manifest entry needs the fields collection and file: " + entry);
+			}
+			File file = new File(path);
+			collectionNames.add(collectionName);
+			paths.add(file.isAbsolute() ? file.getPath() : new File(manifestDirectory, path).getPath());
+			indexes.add(entryObject.get("indexes") instanceof BasicDBList 
+					? (BasicDBList) entryObject.get("indexes") : new BasicDBList());
+		}
+		return importInParallel(collectionNames, paths, indexes);
+	}
+
+	private Map<String, Object> importInParallel(List<String> collectionNames, List<String> paths, 
+			List<BasicDBList> indexes) {
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (int i = 0; i < collectionNames.size(); i++) {
+			final String collectionName = collectionNames.get(i);
+			final String path = paths.get(i);
+			final BasicDBList collectionIndexes = indexes.get(i);
+			tasks.add(new Callable<Long>() {
+				public Long call() {
+					long start = System.currentTimeMillis();
+					streamDocuments(collectionName, path);
+					DBCollection collection = db.getCollection(collectionName);
+					for (Object index : collectionIndexes) {
+						DBObject indexObject = (DBObject) index;
+						DBObject keys = (DBObject) indexObject.get("keys");
+						String name = indexObject.get("name") != null 
+								? (String) indexObject.get("name") : DBCollection.genIndexName(keys);
+						collection.ensureIndex(keys, name, Boolean.TRUE.equals(indexObject.get("unique")));
+					}
+					return System.currentTimeMillis() - start;
+				}
+			});
+		}
+		List<Long> timings = runInParallel(tasks, Math.min(tasks.size(), IMPORT_THREADS));
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < collectionNames.size(); i++) {
+			Long previous = (Long) ret.get(collectionNames.get(i));
+			ret.put(collectionNames.get(i), previous != null ? previous + timings.get(i) : timings.get(i));
+		}
+		return ret;
+	}
+
+	/**
+	 * Imports the documents from the given file into the given collection. All non-unique secondary indexes of the 
+	 * collection are dropped before the import and rebuilt with their original definitions afterwards, so the 
+	 * documents are inserted without maintaining them. Unique indexes stay in place to reject duplicates. The indexes
+	 * are rebuilt even if the import fails. Returns the time spent in each phase in milliseconds.
 	 * 
 	 * Arguments: 
 	 * - _collectionName_: the name of the target collection
 	 * - _file_: the file that contains the documents
 	 * 
 	 * Example:
-	 * | Import Documents Row Seperated | myCol | /data/documents.json |
+	 * | ${timings}= | Import Documents With Deferred Indexes | myCol | /data/documents.json |
 	 */
-	public void importDocumentsRowSeperated(String collectionName, String file) {
+	public Map<String, Object> importDocumentsWithDeferredIndexes(String collectionName, String file) {
+		DBCollection collection = db.getCollection(collectionName);
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+
+		long start = System.currentTimeMillis();
+		List<DBObject> indexes = new ArrayList<DBObject>();
+		for (DBObject index : getSecondaryIndexes(collection)) {
+			Object unique = index.get("unique");
+			if (!Boolean.TRUE.equals(unique) && !(unique instanceof Number && ((Number) unique).intValue() == 1)) {
+				collection.dropIndex((String) index.get("name"));
+				indexes.add(index);
+			}
+		}
+		ret.put("dropIndexes", System.currentTimeMillis() - start);
+
+		start = System.currentTimeMillis();
+		RuntimeException importError = null;
+		try {
+			importDocuments(collectionName, file);
+		} catch (RuntimeException e) {
+			importError = e;
+		}
+		ret.put("import", System.currentTimeMillis() - start);
+
+		start = System.currentTimeMillis();
 		try {
-			String documents = IOUtils.toString(new FileReader(file));
-			String[] documentsAsArray = documents.split("\n");
-			for (String json : documentsAsArray) {
-				db.getCollection(collectionName).insert((DBObject) JSON.parse(json));
+			createIndexes(collection, indexes);
+		} catch (MongodbLibraryException e) {
+			if (importError != null) {
+				throw new MongodbLibraryException(importError.getMessage() + ", " + e.getMessage(), importError);
+			}
+			throw e;
+		}
+		if (importError != null) {
+			throw importError;
+		}
+		ret.put("rebuildIndexes", System.currentTimeMillis() - start);
+		ret.put("indexes", indexes.size());
+		return ret;
+	}
+
+	private List<DBObject> getSecondaryIndexes(DBCollection collection) {
+		List<DBObject> indexes = new ArrayList<DBObject>();
+		for (DBObject index : collection.getIndexInfo()) {
+			if (!"_id_".equals(index.get("name"))) {
+				indexes.add(index);
 			}
-			
-		} catch (IOException e) {
-			throw new MongodbLibraryException("error reading json-file", e);
+		}
+		return indexes;
+	}
+
+	private void createIndexes(DBCollection collection, List<DBObject> indexes) {
+		List<String> errors = new ArrayList<String>();
+		for (DBObject index : indexes) {
+			DBObject options = new BasicDBObject(index.toMap());
+			options.removeField("key");
+			options.removeField("ns");
+			options.removeField("v");
+			try {
+				collection.createIndex((DBObject) index.get("key"), options);
+			} catch (MongoException e) {
+				errors.add(index.get("name") + ": " + e.getMessage());
+			}
+		}
+		if (!errors.isEmpty()) {
+			throw new MongodbLibraryException("error creating indexes " + errors);
 		}
 	}
 
@@ -241,6 +941,47 @@ public class MongodbLibrary {
 		mongoClient.dropDatabase(databaseName);
 	}
 	
+	/**
+	 * Removes all documents from all collections of the connected database but keeps the collections with their 
+	 * options and indexes, so a test setup does not need to create them again. The collections are cleared in 
+	 * parallel. Small collections are cleared with a single server-side remove, large and capped collections are 
+	 * dropped and created again with their previous options and indexes.
+	 * 
+	 * Example: 
+	 * | Reset Database |
+	 */
+	public void resetDatabase() {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final String collectionName : getCollections()) {
+			if (collectionName.startsWith("system.")) {
+				continue;
+			}
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					resetCollection(collectionName);
+					return null;
+				}
+			});
+		}
+		runInParallel(tasks, Math.min(tasks.size(), RESET_THREADS));
+	}
+
+	private void resetCollection(String collectionName) {
+		DBCollection collection = db.getCollection(collectionName);
+		DBObject namespace = db.getCollection("system.namespaces").findOne(
+				new BasicDBObject("name", db.getName() + "." + collectionName));
+		DBObject options = namespace != null && namespace.get("options") instanceof DBObject 
+				? (DBObject) namespace.get("options") : new BasicDBObject();
+		if (!Boolean.TRUE.equals(options.get("capped")) && collection.count() <= RESET_DROP_THRESHOLD) {
+			collection.remove(new BasicDBObject());
+		} else {
+			List<DBObject> indexes = getSecondaryIndexes(collection);
+			collection.drop();
+			db.createCollection(collectionName, options);
+			createIndexes(collection, indexes);
+		}
+	}
+
 	/**
 	 * Creates a collection with the given name and options.
 	 * 
@@ -373,6 +1114,307 @@ public class MongodbLibrary {
 		fail("Index " + indexName + " does not exist in Collection " + collectionName + ".");		
 	}
 	
+	/**
+	 *  Executes the given operations one after another with a single keyword call and returns the result of each
+	 *  operation. This is especially useful with the remote server, where every keyword call is a network round trip.
+	 *  
+	 *  Every operation is a document with the field _op_ and the field _collection_. Supported operations and their fields:
+	 *  - _insert_: _document_ (a single document or an array of documents)
+	 *  - _update_: _query_, _update_, optional _upsert_ and _multi_ (default: true)
+	 *  - _remove_: _query_
+	 *  - _ensureIndex_: _keys_, optional _name_ and _unique_
+	 *  - _createCollection_: optional _options_
+	 *  - _drop_
+	 *  
+	 *  The result of an operation contains the fields _op_, _collection_ and for write operations _n_, the number of
+	 *  affected documents. The execution stops at the first failing operation.
+	 *  
+	 *  Arguments:
+	 *  - _operations_: the operations as JSON array
+	 *  
+	 *  Example:
+	 *  | Run Batch | [{op : 'insert', collection : 'myCol', document : {name : 'Max'}}, {op : 'ensureIndex', collection : 'myCol', keys : {name : 1}}] |
+	 */
+	public List<Map<String, Object>> runBatch(String operations) {
+		Object parsed = parse(operations);
+		if (!(parsed instanceof BasicDBList)) {
+			throw new MongodbLibraryException("operations must be a JSON array");
+		}
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+		int i = 0;
+		for (Object operation : (BasicDBList) parsed) {
+			try {
+				ret.add(runOperation((DBObject) operation));
+			} catch (MongoException e) {
+				throw new MongodbLibraryException("error executing operation " + i + ": " + operation, e);
+			}
+			i++;
+		}
+		return ret;
+	}
+
+	private Map<String, Object> runOperation(DBObject operation) {
+		String op = (String) operation.get("op");
+		String collectionName = (String) operation.get("collection");
+		if (op == null || collectionName == null) {
+			throw new MongodbLibraryException("operation needs the fields op and collection: " + operation);
+		}
+		DBCollection collection = db.getCollection(collectionName);
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("op", op);
+		ret.put("collection", collectionName);
+		if ("insert".equals(op)) {
+			Object document = operation.get("document");
+			if (document instanceof BasicDBList) {
+				List<DBObject> documents = new ArrayList<DBObject>();
+				for (Object element : (BasicDBList) document) {
+					documents.add((DBObject) element);
+				}
+				collection.insert(documents);
+				ret.put("n", documents.size());
+			} else {
+				collection.insert((DBObject) document);
+				ret.put("n", 1);
+			}
+		} else if ("update".equals(op)) {
+			WriteResult result = collection.update((DBObject) operation.get("query"), (DBObject) operation.get("update"),
+					Boolean.TRUE.equals(operation.get("upsert")), !Boolean.FALSE.equals(operation.get("multi")));
+			ret.put("n", result.getN());
+		} else if ("remove".equals(op)) {
+			ret.put("n", collection.remove((DBObject) operation.get("query")).getN());
+		} else if ("ensureIndex".equals(op)) {
+			DBObject keys = (DBObject) operation.get("keys");
+			String name = operation.get("name") != null ? (String) operation.get("name") : DBCollection.genIndexName(keys);
+			collection.ensureIndex(keys, name, Boolean.TRUE.equals(operation.get("unique")));
+		} else if ("createCollection".equals(op)) {
+			DBObject options = (DBObject) operation.get("options");
+			db.createCollection(collectionName, options != null ? options : new BasicDBObject());
+		} else if ("drop".equals(op)) {
+			collection.drop();
+		} else {
+			throw new MongodbLibraryException("unknown operation: " + op);
+		}
+		return ret;
+	}
+
+	/**
+	 *  Fails if the given query does not use the given index. The chosen plan is determined with explain().
+	 *  
+	 *  Arguments:
+	 *  - _collectionName_: the name of the collection
+	 *  - _query_: the query as JSON
+	 *  - _indexName_: the name of the index which should be used
+	 *  
+	 *  Example:
+	 *  | Query Should Use Index | myCol | {a : 5, b : 'x'} | a_1_b_1 |
+	 */
+	public void queryShouldUseIndex(String collectionName, String query, String indexName) {
+		DBObject explain = explain(collectionName, query);
+		String usedIndex = getUsedIndex(explain);
+		assertTrue("Query " + query + " on Collection " + collectionName + " does not use Index " + indexName 
+				+ " but " + (usedIndex != null ? usedIndex : "no index") + ".", indexName.equals(usedIndex));
+	}
+
+	/**
+	 *  Fails if the given query examines more than the given number of documents. The number of examined 
+	 *  documents is determined with explain().
+	 *  
+	 *  Arguments:
+	 *  - _collectionName_: the name of the collection
+	 *  - _query_: the query as JSON
+	 *  - _n_: the maximum number of documents the query may examine
+	 *  
+	 *  Example:
+	 *  | Query Should Examine At Most | myCol | {a : 5} | 10 |
+	 */
+	public void queryShouldExamineAtMost(String collectionName, String query, String n) {
+		DBObject explain = explain(collectionName, query);
+		long examined = getExplainValue(explain, "nscannedObjects", "totalDocsExamined");
+		assertTrue("Query " + query + " on Collection " + collectionName + " examines " + examined 
+				+ " documents, expected at most " + n + ".", examined <= Long.parseLong(n));
+	}
+
+	/**
+	 *  Fails if the execution of the given query takes longer than the given number of milliseconds. The execution
+	 *  time is determined with explain().
+	 *  
+	 *  Arguments:
+	 *  - _collectionName_: the name of the collection
+	 *  - _query_: the query as JSON
+	 *  - _millis_: the maximum execution time in milliseconds
+	 *  
+	 *  Example:
+	 *  | Query Should Take At Most | myCol | {a : 5} | 50 |
+	 */
+	public void queryShouldTakeAtMost(String collectionName, String query, String millis) {
+		DBObject explain = explain(collectionName, query);
+		long took = getExplainValue(explain, "millis", "executionTimeMillis");
+		assertTrue("Query " + query + " on Collection " + collectionName + " takes " + took 
+				+ " ms, expected at most " + millis + " ms.", took <= Long.parseLong(millis));
+	}
+
+	private DBObject explain(String collectionName, String query) {
+		return db.getCollection(collectionName).find((DBObject) parse(query)).explain();
+	}
+
+	private String getUsedIndex(DBObject explain) {
+		// MongoDB up to 2.4 reports the index in the cursor field ("BtreeCursor a_1_b_1"),
+		// later versions as indexName of a stage of the winning plan
+		Object cursor = explain.get("cursor");
+		if (cursor instanceof String) {
+			String[] parts = ((String) cursor).split(" ");
+			return parts[0].equals("BtreeCursor") && parts.length > 1 ? parts[1] : null;
+		}
+		Object queryPlanner = explain.get("queryPlanner");
+		if (queryPlanner instanceof DBObject) {
+			return findIndexName((DBObject) ((DBObject) queryPlanner).get("winningPlan"));
+		}
+		return null;
+	}
+
+	private String findIndexName(DBObject stage) {
+		if (stage == null) {
+			return null;
+		}
+		if (stage.get("indexName") instanceof String) {
+			return (String) stage.get("indexName");
+		}
+		if (stage.get("inputStage") instanceof DBObject) {
+			return findIndexName((DBObject) stage.get("inputStage"));
+		}
+		return null;
+	}
+
+	private long getExplainValue(DBObject explain, String legacyField, String executionStatsField) {
+		Object value = explain.get(legacyField);
+		if (value == null && explain.get("executionStats") instanceof DBObject) {
+			value = ((DBObject) explain.get("executionStats")).get(executionStatsField);
+		}
+		if (!(value instanceof Number)) {
+			throw new MongodbLibraryException("explain does not contain " + legacyField + ": " + explain);
+		}
+		return ((Number) value).longValue();
+	}
+
+	/**
+	 *  Executes the given operation repeatedly from the given number of threads for the given number of seconds and
+	 *  returns the number of operations (_operations_), failed operations (_errors_), the throughput in operations 
+	 *  per second (_throughput_) and the latencies in milliseconds (_p50Millis_, _p95Millis_, _p99Millis_, _maxMillis_).
+	 *  
+	 *  The operation template is a document with the field _op_ and the fields of the operation:
+	 *  - _insert_: _document_
+	 *  - _find_: _query_ (all found documents are fetched)
+	 *  - _update_: _query_, _update_, optional _multi_ (default: true)
+	 *  - _remove_: _query_
+	 *  
+	 *  Arguments:
+	 *  - _collectionName_: the name of the collection
+	 *  - _operationTemplate_: the operation to execute as JSON
+	 *  - _threads_: the number of concurrent threads
+	 *  - _duration_: the duration of the load in seconds
+	 *  
+	 *  Example:
+	 *  | ${result}= | Run Load | myCol | {op : 'insert', document : {name : 'Max', age : 22}} | 8 | 30 |
+	 */
+	public Map<String, Object> runLoad(String collectionName, String operationTemplate, String threads, String duration) {
+		final DBCollection collection = db.getCollection(collectionName);
+		final DBObject template = (DBObject) parse(operationTemplate);
+		final String op = (String) template.get("op");
+		if (!LOAD_OPERATIONS.contains(op)) {
+			throw new MongodbLibraryException("unknown operation: " + op + ", supported operations: " + LOAD_OPERATIONS);
+		}
+		checkLoadTemplate(op, template);
+		final AtomicLong errors = new AtomicLong();
+		final long end = System.nanoTime() + Long.parseLong(duration) * 1000000000L;
+		List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>();
+		for (int i = 0; i < parseInt(threads); i++) {
+			tasks.add(new Callable<long[]>() {
+				public long[] call() {
+					long[] latencies = new long[1024];
+					int n = 0;
+					while (System.nanoTime() < end) {
+						long start = System.nanoTime();
+						try {
+							runLoadOperation(collection, op, template);
+						} catch (MongoException e) {
+							errors.incrementAndGet();
+							continue;
+						}
+						if (n == latencies.length) {
+							latencies = Arrays.copyOf(latencies, n * 2);
+						}
+						latencies[n++] = System.nanoTime() - start;
+					}
+					return Arrays.copyOf(latencies, n);
+				}
+			});
+		}
+		long start = System.nanoTime();
+		List<long[]> threadLatencies = runInParallel(tasks, tasks.size());
+		long elapsed = System.nanoTime() - start;
+
+		int operations = 0;
+		for (long[] latencies : threadLatencies) {
+			operations += latencies.length;
+		}
+		long[] allLatencies = new long[operations];
+		int offset = 0;
+		for (long[] latencies : threadLatencies) {
+			System.arraycopy(latencies, 0, allLatencies, offset, latencies.length);
+			offset += latencies.length;
+		}
+		Arrays.sort(allLatencies);
+
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("operations", operations);
+		ret.put("errors", errors.get());
+		ret.put("throughput", operations / (elapsed / 1e9));
+		ret.put("p50Millis", percentileMillis(allLatencies, 0.50));
+		ret.put("p95Millis", percentileMillis(allLatencies, 0.95));
+		ret.put("p99Millis", percentileMillis(allLatencies, 0.99));
+		ret.put("maxMillis", percentileMillis(allLatencies, 1.0));
+		return ret;
+	}
+
+	private void checkLoadTemplate(String op, DBObject template) {
+		List<String> fields = "insert".equals(op) ? Arrays.asList("document") 
+				: "update".equals(op) ? Arrays.asList("query", "update") : Arrays.asList("query");
+		for (String field : fields) {
+			if (!(template.get(field) instanceof DBObject)) {
+				throw new MongodbLibraryException("operation " + op + " needs the document " + field + ": " + template);
+			}
+		}
+	}
+
+	private void runLoadOperation(DBCollection collection, String op, DBObject template) {
+		if ("insert".equals(op)) {
+			// the driver adds the _id to the inserted document, so every insert needs its own copy
+			collection.insert(new BasicDBObject(((DBObject) template.get("document")).toMap()));
+		} else if ("find".equals(op)) {
+			DBCursor cursor = collection.find((DBObject) template.get("query"));
+			try {
+				while (cursor.hasNext()) {
+					cursor.next();
+				}
+			} finally {
+				cursor.close();
+			}
+		} else if ("update".equals(op)) {
+			collection.update((DBObject) template.get("query"), (DBObject) template.get("update"), 
+					false, !Boolean.FALSE.equals(template.get("multi")));
+		} else {
+			collection.remove((DBObject) template.get("query"));
+		}
+	}
+
+	private double percentileMillis(long[] sortedLatencies, double percentile) {
+		if (sortedLatencies.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+		return sortedLatencies[Math.max(0, index)] / 1e6;
+	}
+
 	DB getDb() {
 		return db;
 	}
@@ -415,6 +1457,96 @@ public class MongodbLibrary {
 		return ret;
 	}
 
+	/**
+	 *  Finds some documents in the given collection and returns them as a single JSON array. Returning one string
+	 *  instead of nested dictionaries keeps large results cheap to transfer, especially with the remote server.
+	 *  
+	 *  Arguments:
+	 *  - _collectionName_: the name of the collection
+	 *  - _jsonString_: the documents to find as JSON
+	 *  
+	 *  Example:
+	 *  | ${json}= | Get Documents As Json | myCol | { age : { $gte: 23 } } |
+	 */
+	public String getDocumentsAsJson(String collectionName, String jsonString) {
+		StringBuilder json = new StringBuilder("[");
+		DBCursor cursor = db.getCollection(collectionName).find((DBObject) parse(jsonString));
+		try {
+			for (DBObject document : cursor) {
+				if (json.length() > 1) {
+					json.append(',');
+				}
+				JSON.serialize(document, json);
+			}
+		} finally {
+			cursor.close();
+		}
+		return json.append(']').toString();
+	}
+
+	/**
+	 *  Finds some documents in the given collection and returns them as a single JSON array. If the JSON gets longer 
+	 *  than the given number of characters, the documents are written to a temporary file instead. The keyword returns
+	 *  a dictionary with the number of documents (_count_) and either the JSON (_json_) or the path of the file (_file_).
+	 *  With the remote server the file is written on the machine of the server. The file is deleted when the library 
+	 *  process exits, use _Remove File_ of the OperatingSystem library to delete it earlier.
+	 *  
+	 *  Arguments:
+	 *  - _collectionName_: the name of the collection
+	 *  - _jsonString_: the documents to find as JSON
+	 *  - _maxLength_: the maximum number of characters returned directly
+	 *  
+	 *  Example:
+	 *  | ${result}= | Get Documents As Json Or File | myCol | { age : { $gte: 23 } } | 1000000 |
+	 */
+	public Map<String, Object> getDocumentsAsJsonOrFile(String collectionName, String jsonString, String maxLength) {
+		int limit = parseInt(maxLength);
+		StringBuilder buffer = new StringBuilder("[");
+		File file = null;
+		Writer writer = null;
+		boolean written = false;
+		int count = 0;
+		DBCursor cursor = db.getCollection(collectionName).find((DBObject) parse(jsonString));
+		try {
+			for (DBObject document : cursor) {
+				if (count > 0) {
+					buffer.append(',');
+				}
+				JSON.serialize(document, buffer);
+				count++;
+				if (buffer.length() > limit) {
+					if (writer == null) {
+						file = File.createTempFile("mongodblibrary-", ".json");
+						file.deleteOnExit();
+						writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+					}
+					writer.append(buffer);
+					buffer.setLength(0);
+				}
+			}
+			buffer.append(']');
+			Map<String, Object> ret = new LinkedHashMap<String, Object>();
+			ret.put("count", count);
+			if (writer == null) {
+				ret.put("json", buffer.toString());
+			} else {
+				writer.append(buffer);
+				writer.close();
+				ret.put("file", file.getAbsolutePath());
+			}
+			written = true;
+			return ret;
+		} catch (IOException e) {
+			throw new MongodbLibraryException("error writing json-file", e);
+		} finally {
+			cursor.close();
+			IOUtils.closeQuietly(writer);
+			if (!written && file != null) {
+				file.delete();
+			}
+		}
+	}
+
 	/**
 	 *  Removes some documents in the given collection.
 	 *  
@@ -472,6 +1604,186 @@ public class MongodbLibrary {
 		return new ArrayList<String>(collectionNames);
 	}
 
+	/**
+	 *  Enables the MongoDB profiler for the given database. All operations slower than the given number of 
+	 *  milliseconds are recorded from now on and can be inspected with `Get Slow Operations` and 
+	 *  `No Operation Should Exceed`. The threshold also applies to the slow query log of the whole server until 
+	 *  `Stop Profiling` restores the previous settings.
+	 *  
+	 *  Arguments:
+	 *  - _databaseName_: the name of the database to profile
+	 *  - _slowms_: the threshold in milliseconds for slow operations
+	 *  
+	 *  Example:
+	 *  | Start Profiling | myDb | 100 |
+	 */
+	public void startProfiling(String databaseName, String slowms) {
+		profiledDb = mongoClient.getDB(databaseName);
+		CommandResult result = profiledDb.command(new BasicDBObject("profile", 1).append("slowms", parseInt(slowms)));
+		result.throwOnError();
+		if (previousProfiling == null) {
+			// slowms is a server-wide setting, so the previous values are restored by Stop Profiling
+			previousProfiling = new BasicDBObject("profile", result.get("was")).append("slowms", result.get("slowms"));
+		}
+		Object localTime = profiledDb.command("isMaster").get("localTime");
+		profilingStart = localTime instanceof Date ? (Date) localTime : new Date();
+	}
+
+	/**
+	 *  Disables the MongoDB profiler enabled by `Start Profiling` and restores the previous profiling level and slow 
+	 *  operation threshold. The recorded operations are kept.
+	 *  
+	 *  Example:
+	 *  | Stop Profiling |
+	 */
+	public void stopProfiling() {
+		DBObject settings = previousProfiling != null ? previousProfiling : new BasicDBObject("profile", 0);
+		getProfiledDb().command(settings).throwOnError();
+		previousProfiling = null;
+	}
+
+	/**
+	 *  Returns the slow operations recorded since `Start Profiling`, summarized by namespace and operation type. 
+	 *  Every entry contains the fields _ns_, _op_, _count_, _totalMillis_ and _maxMillis_, the entries are sorted 
+	 *  by _totalMillis_ descending.
+	 *  
+	 *  Example:
+	 *  | ${slowOperations}= | Get Slow Operations |
+	 */
+	public List<Map<String, Object>> getSlowOperations() {
+		AggregationOutput output = getProfiledDb().getCollection("system.profile").aggregate(
+				new BasicDBObject("$match", getProfilingWindow()),
+				new BasicDBObject("$project", new BasicDBObject("ns", 1).append("op", 1).append("millis", 1)),
+				new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject("ns", "$ns").append("op", "$op"))
+						.append("count", new BasicDBObject("$sum", 1))
+						.append("totalMillis", new BasicDBObject("$sum", "$millis"))
+						.append("maxMillis", new BasicDBObject("$max", "$millis"))),
+				new BasicDBObject("$sort", new BasicDBObject("totalMillis", -1)));
+		output.getCommandResult().throwOnError();
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+		for (DBObject group : output.results()) {
+			DBObject id = (DBObject) group.get("_id");
+			Map<String, Object> summary = new LinkedHashMap<String, Object>();
+			summary.put("ns", id.get("ns"));
+			summary.put("op", id.get("op"));
+			summary.put("count", group.get("count"));
+			summary.put("totalMillis", group.get("totalMillis"));
+			summary.put("maxMillis", group.get("maxMillis"));
+			ret.add(summary);
+		}
+		return ret;
+	}
+
+	/**
+	 *  Fails if an operation recorded since `Start Profiling` took longer than the given number of milliseconds.
+	 *  
+	 *  Arguments:
+	 *  - _millis_: the maximum duration of an operation in milliseconds
+	 *  
+	 *  Example:
+	 *  | No Operation Should Exceed | 500 |
+	 */
+	public void noOperationShouldExceed(String millis) {
+		DBObject query = getProfilingWindow().append("millis", new BasicDBObject("$gt", parseInt(millis)));
+		DBObject keys = new BasicDBObject("ns", 1).append("op", 1).append("millis", 1).append("query", 1).append("_id", 0);
+		List<DBObject> operations = getProfiledDb().getCollection("system.profile").find(query, keys)
+				.sort(new BasicDBObject("millis", -1)).limit(10).toArray();
+		assertTrue("Operations exceeding " + millis + " ms: " + operations, operations.isEmpty());
+	}
+
+	private DB getProfiledDb() {
+		if (profiledDb == null) {
+			throw new MongodbLibraryException("profiling has not been started, use Start Profiling first");
+		}
+		return profiledDb;
+	}
+
+	private BasicDBObject getProfilingWindow() {
+		return new BasicDBObject("ts", new BasicDBObject("$gte", profilingStart))
+				.append("ns", new BasicDBObject("$ne", getProfiledDb().getName() + ".system.profile"));
+	}
+
+	/**
+	 *  Captures a snapshot of the server and collection statistics under the given label and returns it. The snapshot 
+	 *  contains the numeric values of the serverStatus sections opcounters, extra_info (page faults), globalLock, locks, 
+	 *  mem, connections, network and cursors, the collStats values count, size, storageSize, totalIndexSize and nindexes 
+	 *  of every collection in the connected database (prefixed with collections.<name>) and the capture time 
+	 *  (timestampMillis). Two snapshots can be compared with `Get Stats Delta`.
+	 *  
+	 *  Arguments:
+	 *  - _label_: the name of the snapshot
+	 *  
+	 *  Example:
+	 *  | Capture Server Stats | beforeLoad |
+	 */
+	public Map<String, Object> captureServerStats(String label) {
+		Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+		snapshot.put("timestampMillis", System.currentTimeMillis());
+		CommandResult serverStatus = db.command("serverStatus");
+		serverStatus.throwOnError();
+		for (String section : SERVER_STATUS_SECTIONS) {
+			flattenNumbers(section, serverStatus.get(section), snapshot);
+		}
+		for (String collectionName : getCollections()) {
+			CommandResult collStats = db.getCollection(collectionName).getStats();
+			for (String field : COLLECTION_STATS_FIELDS) {
+				flattenNumbers("collections." + collectionName + "." + field, collStats.get(field), snapshot);
+			}
+		}
+		statsSnapshots.put(label, snapshot);
+		return snapshot;
+	}
+
+	/**
+	 *  Returns the difference between two snapshots captured with `Capture Server Stats`. The result contains every 
+	 *  value of the second snapshot minus the value of the first snapshot, values which are missing in the first 
+	 *  snapshot (e.g. of new collections) are counted from zero.
+	 *  
+	 *  Arguments:
+	 *  - _from_: the label of the first snapshot
+	 *  - _to_: the label of the second snapshot
+	 *  
+	 *  Example:
+	 *  | ${delta}= | Get Stats Delta | beforeLoad | afterLoad |
+	 *  | ${inserts}= | Get From Dictionary | ${delta} | opcounters.insert |
+	 */
+	public Map<String, Object> getStatsDelta(String from, String to) {
+		Map<String, Object> fromSnapshot = getStatsSnapshot(from);
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, Object> entry : getStatsSnapshot(to).entrySet()) {
+			Number toValue = (Number) entry.getValue();
+			Number fromValue = fromSnapshot.containsKey(entry.getKey()) ? (Number) fromSnapshot.get(entry.getKey()) : 0;
+			if (isFloatingPoint(toValue) || isFloatingPoint(fromValue)) {
+				ret.put(entry.getKey(), toValue.doubleValue() - fromValue.doubleValue());
+			} else {
+				ret.put(entry.getKey(), toValue.longValue() - fromValue.longValue());
+			}
+		}
+		return ret;
+	}
+
+	private Map<String, Object> getStatsSnapshot(String label) {
+		if (!statsSnapshots.containsKey(label)) {
+			throw new MongodbLibraryException("no stats captured with label " + label);
+		}
+		return statsSnapshots.get(label);
+	}
+
+	private void flattenNumbers(String prefix, Object value, Map<String, Object> target) {
+		if (value instanceof Number) {
+			target.put(prefix, value);
+		} else if (value instanceof DBObject && !(value instanceof List)) {
+			DBObject object = (DBObject) value;
+			for (String key : object.keySet()) {
+				flattenNumbers(prefix + "." + key, object.get(key), target);
+			}
+		}
+	}
+
+	private boolean isFloatingPoint(Number number) {
+		return number instanceof Double || number instanceof Float;
+	}
+
 	/**
 	 *  Returns the name of the databases from the server.
 	 *  
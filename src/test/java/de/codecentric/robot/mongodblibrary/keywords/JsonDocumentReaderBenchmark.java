@@ -0,0 +1,49 @@
+package de.codecentric.robot.mongodblibrary.keywords;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.util.JSON;
+
+/**
+ *
+ * Compares the parse time of {@link JsonDocumentReader} and {@link JSON#parse(String)} for an array of documents.
+ * Run with: java -cp ... JsonDocumentReaderBenchmark [documents] [rounds]
+ *
+ */
+public class JsonDocumentReaderBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int documents = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		String json = createDocuments(documents);
+
+		for (int round = 1; round <= rounds; round++) {
+			long start = System.nanoTime();
+			int parsed = ((BasicDBList) JSON.parse(json)).size();
+			long jsonParse = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			JsonDocumentReader reader = new JsonDocumentReader(new StringReader(json));
+			int read = 0;
+			while (reader.nextDocument() != null) {
+				read++;
+			}
+			long documentReader = System.nanoTime() - start;
+
+			System.out.println("round " + round + ": JSON.parse " + parsed + " documents in " + jsonParse / 1000000 
+					+ " ms, JsonDocumentReader " + read + " documents in " + documentReader / 1000000 + " ms");
+		}
+	}
+
+	private static String createDocuments(int documents) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < documents; i++) {
+			json.append(i > 0 ? ",\n" : "").append("{_id : ").append(i).append(", name : 'name").append(i)
+					.append("', street : 'merscheider str.', age : ").append(i % 100).append(", score : ").append(i * 0.5)
+					.append(", active : true, tags : ['a', 'b', 'c'], address : {city : 'Solingen', zip : '42699'}}");
+		}
+		return json.append("]").toString();
+	}
+}
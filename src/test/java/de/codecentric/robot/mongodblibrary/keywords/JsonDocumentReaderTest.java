@@ -0,0 +1,229 @@
+package de.codecentric.robot.mongodblibrary.keywords;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import com.mongodb.util.JSON;
+
+import de.codecentric.robot.mongodblibrary.MongodbLibraryException;
+
+/**
+ *
+ * Tests for {@link JsonDocumentReader}
+ *
+ */
+public class JsonDocumentReaderTest {
+
+	@Test
+	public void shouldReadSingleDocument() throws IOException {
+		//given
+		JsonDocumentReader reader = new JsonDocumentReader(new StringReader("{name : 'max', \"age\" : 22, tags : ['a', \"b\"]}"));
+		//when
+		DBObject document = reader.nextDocument();
+		//then
+		assertThat(document, is(JSON.parse("{name : 'max', age : 22, tags : ['a', 'b']}")));
+		assertThat(reader.nextDocument(), is(nullValue()));
+	}
+
+	@Test
+	public void shouldReadDocumentsFromArray() throws IOException {
+		//when
+		List<DBObject> documents = readAll("[{name : 'max'},\r\n{name : 'otto'}]");
+		//then
+		assertThat(documents.size(), is(2));
+		assertThat((String) documents.get(1).get("name"), is("otto"));
+	}
+
+	@Test
+	public void shouldReadRowSeperatedDocuments() throws IOException {
+		//when
+		List<DBObject> documents = readAll("{name : 'max'}\n{name : 'otto'}\n\n{name : 'peter'}\n");
+		//then
+		assertThat(documents.size(), is(3));
+		assertThat((String) documents.get(2).get("name"), is("peter"));
+	}
+
+	@Test
+	public void shouldReadValuesLikeJsonParse() throws IOException {
+		//given
+		String json = "{i : 1, l : 3000000000, d : 1.5, e : -2e3, t : true, f : false, n : null, "
+				+ "s : \"it's \\\"quoted\\\" \\u00e4\\n\", o : {a : [1, {b : 2}], empty : {}, list : []}}";
+		//when
+		DBObject document = readAll(json).get(0);
+		//then
+		assertThat(document, is(JSON.parse(json)));
+		assertThat(document.get("l") instanceof Long, is(true));
+	}
+
+	@Test
+	public void shouldConvertExtendedJson() throws IOException {
+		//given
+		String json = "{_id : {$oid : '5214c4e3e4b0b8f2b3d9a1c7'}, created : {$date : 1377092835000}, "
+				+ "updated : {$date : '2013-08-21T13:47:15.000Z'}, big : {$numberLong : '9007199254740993'}, "
+				+ "query : {age : {$gte : 23}}}";
+		//when
+		DBObject document = readAll(json).get(0);
+		//then
+		assertThat((ObjectId) document.get("_id"), is(new ObjectId("5214c4e3e4b0b8f2b3d9a1c7")));
+		assertThat((Date) document.get("created"), is(new Date(1377092835000L)));
+		assertThat((Date) document.get("updated"), is(new Date(1377092835000L)));
+		assertThat((Long) document.get("big"), is(9007199254740993L));
+		assertThat(((DBObject) document.get("query")).get("age"), is(JSON.parse("{$gte : 23}")));
+	}
+
+	@Test
+	public void shouldConvertExtendedJsonWithOtherFieldsLikeJsonParse() throws IOException {
+		//given
+		String json = "{_id : {$oid : '5214c4e3e4b0b8f2b3d9a1c7', y : 1}, created : {$date : 1377092835000, y : 1}}";
+		//when
+		DBObject document = readAll(json).get(0);
+		//then
+		assertThat(document, is(JSON.parse(json)));
+		assertThat((ObjectId) document.get("_id"), is(new ObjectId("5214c4e3e4b0b8f2b3d9a1c7")));
+	}
+
+	@Test
+	public void shouldConvertDateWithOffset() throws IOException {
+		//when
+		DBObject document = readAll("{updated : {$date : '2013-08-21T15:47:15.000+02:00'}}").get(0);
+		//then
+		assertThat((Date) document.get("updated"), is(new Date(1377092835000L)));
+	}
+
+	@Test
+	public void shouldConvertRegex() throws IOException {
+		//when
+		DBObject document = readAll("{name : {$regex : '^ma', $options : 'i'}}").get(0);
+		//then
+		Pattern pattern = (Pattern) document.get("name");
+		assertThat(pattern.pattern(), is("^ma"));
+		assertThat(pattern.flags(), is(Pattern.CASE_INSENSITIVE));
+	}
+
+	@Test
+	public void shouldConvertDBRef() throws IOException {
+		//when
+		DBObject document = readAll("{user : {$ref : 'users', $id : 'max'}}").get(0);
+		//then
+		DBRef ref = (DBRef) document.get("user");
+		assertThat(ref.getRef(), is("users"));
+		assertThat((String) ref.getId(), is("max"));
+	}
+
+	@Test
+	public void shouldConvertUUID() throws IOException {
+		//when
+		DBObject document = readAll("{uuid : {$uuid : 'b3a0f5e4-1c2d-4e5f-8a9b-0c1d2e3f4a5b'}}").get(0);
+		//then
+		assertThat((UUID) document.get("uuid"), is(UUID.fromString("b3a0f5e4-1c2d-4e5f-8a9b-0c1d2e3f4a5b")));
+	}
+
+	@Test
+	public void shouldConvertTimestamp() throws IOException {
+		//when
+		DBObject document = readAll("{ts : {$ts : 1377092835, $inc : 3}}").get(0);
+		//then
+		assertThat((BSONTimestamp) document.get("ts"), is(new BSONTimestamp(1377092835, 3)));
+	}
+
+	@Test
+	public void shouldConvertCode() throws IOException {
+		//when
+		DBObject document = readAll("{code : {$code : 'return 1;'}, scoped : {$code : 'return x;', $scope : {x : 1}}}").get(0);
+		//then
+		assertThat((Code) document.get("code"), is(new Code("return 1;")));
+		CodeWScope scoped = (CodeWScope) document.get("scoped");
+		assertThat(scoped.getCode(), is("return x;"));
+		assertThat(scoped.getScope(), is(JSON.parse("{x : 1}")));
+	}
+
+	@Test
+	public void shouldConvertMinKeyAndMaxKey() throws IOException {
+		//when
+		DBObject document = readAll("{min : {$minKey : 1}, max : {$maxKey : 1}}").get(0);
+		//then
+		assertThat(document.get("min") instanceof MinKey, is(true));
+		assertThat(document.get("max") instanceof MaxKey, is(true));
+	}
+
+	@Test
+	public void shouldReadNaN() throws IOException {
+		//when
+		DBObject document = readAll("{d : NaN}").get(0);
+		//then
+		assertThat(Double.isNaN((Double) document.get("d")), is(true));
+	}
+
+	@Test
+	public void shouldReadTestDataLikeJsonParse() throws IOException {
+		//given
+		String path = "src/test/data/testArray.json";
+		//when
+		List<DBObject> documents = new ArrayList<DBObject>();
+		JsonDocumentReader reader = new JsonDocumentReader(new FileReader(path));
+		DBObject document;
+		while ((document = reader.nextDocument()) != null) {
+			documents.add(document);
+		}
+		//then
+		BasicDBList expected = (BasicDBList) JSON.parse("[{name : 'max'}, {name : 'otto'}]");
+		assertThat(documents.size(), is(2));
+		assertThat(documents.get(0), is(expected.get(0)));
+		assertThat(documents.get(1), is(expected.get(1)));
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailOnUnterminatedDocument() throws IOException {
+		//when
+		readAll("{name : 'max'");
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailOnMissingComma() throws IOException {
+		//when
+		readAll("[{name : 'max'} {name : 'otto'}]");
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailOnTrailingCommaInArray() throws IOException {
+		//when
+		readAll("[{name : 'max'},]");
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailOnTrailingCommaInNestedArray() throws IOException {
+		//when
+		readAll("{tags : ['a', 'b',]}");
+	}
+
+	private List<DBObject> readAll(String json) throws IOException {
+		List<DBObject> documents = new ArrayList<DBObject>();
+		JsonDocumentReader reader = new JsonDocumentReader(new StringReader(json));
+		DBObject document;
+		while ((document = reader.nextDocument()) != null) {
+			documents.add(document);
+		}
+		return documents;
+	}
+}
@@ -0,0 +1,142 @@
+package de.codecentric.robot.mongodblibrary.keywords;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.codecentric.robot.mongodblibrary.MongodbLibraryException;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.GenericVersion;
+import de.flapdoodle.embed.process.distribution.Platform;
+
+/**
+ *
+ * Tests for {@link LocalArtifactStore}
+ *
+ */
+public class LocalArtifactStoreTest {
+
+	private static final byte[] EXECUTABLE = "#!/bin/sh".getBytes();
+
+	private static final Distribution DISTRIBUTION = new Distribution(new GenericVersion("2.4.5"), Platform.Linux, BitSize.B64);
+
+	private File tempDir;
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = File.createTempFile("localArtifactStoreTest", "");
+		tempDir.delete();
+		tempDir.mkdir();
+		cacheDir = new File(tempDir, "cache");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void shouldExtractExecutableFromArchive() throws IOException {
+		//given
+		File archive = createArchive();
+		//when
+		File executable = new LocalArtifactStore(archive, cacheDir).extractExe(DISTRIBUTION);
+		//then
+		assertThat(executable.getName(), is("mongod"));
+		assertThat(executable.canExecute(), is(true));
+		assertThat(executable.getParentFile().getParentFile(), is(cacheDir));
+		assertThat(FileUtils.readFileToString(executable), is(new String(EXECUTABLE)));
+	}
+
+	@Test
+	public void shouldReuseCachedExecutable() throws IOException {
+		//given
+		File archive = createArchive();
+		File executable = new LocalArtifactStore(archive, cacheDir).extractExe(DISTRIBUTION);
+		long lastModified = executable.lastModified();
+		executable.setLastModified(lastModified - 10000);
+		//when
+		File cachedExecutable = new LocalArtifactStore(archive, cacheDir).extractExe(DISTRIBUTION);
+		//then
+		assertThat(cachedExecutable, is(executable));
+		assertThat(cachedExecutable.lastModified(), is(lastModified - 10000));
+	}
+
+	@Test
+	public void shouldExtractCorruptedExecutableAgain() throws IOException {
+		//given
+		File archive = createArchive();
+		File executable = new LocalArtifactStore(archive, cacheDir).extractExe(DISTRIBUTION);
+		FileUtils.writeStringToFile(executable, "corrupted", "UTF-8");
+		//when
+		File cachedExecutable = new LocalArtifactStore(archive, cacheDir).extractExe(DISTRIBUTION);
+		//then
+		assertThat(FileUtils.readFileToString(cachedExecutable), is(new String(EXECUTABLE)));
+	}
+
+	@Test
+	public void shouldUseExecutableFromDirectory() throws IOException {
+		//given
+		File executable = new File(tempDir, "mongodb/bin/mongod");
+		executable.getParentFile().mkdirs();
+		FileUtils.writeStringToFile(executable, "mongod", "UTF-8");
+		//when
+		File foundExecutable = new LocalArtifactStore(new File(tempDir, "mongodb"), cacheDir).extractExe(DISTRIBUTION);
+		//then
+		assertThat(foundExecutable, is(executable));
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailIfDirectoryContainsNoExecutable() throws IOException {
+		//when
+		new LocalArtifactStore(tempDir, cacheDir).extractExe(DISTRIBUTION);
+	}
+
+	@Test
+	public void shouldFailIfArchiveContainsNoExecutable() throws IOException {
+		//given
+		File archive = createArchive("mongodb-linux-x86_64-2.4.5/bin/mongo");
+		//when
+		try {
+			new LocalArtifactStore(archive, cacheDir).extractExe(DISTRIBUTION);
+			fail("expected MongodbLibraryException");
+		} catch (MongodbLibraryException e) {
+			//then
+			File archiveCacheDir = cacheDir.listFiles()[0];
+			assertThat(archiveCacheDir.list().length, is(0));
+		}
+	}
+
+	private File createArchive() throws IOException {
+		return createArchive("mongodb-linux-x86_64-2.4.5/bin/mongod");
+	}
+
+	private File createArchive(String entryName) throws IOException {
+		File archive = new File(tempDir, "mongodb-linux-x86_64-2.4.5.tgz");
+		TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(new FileOutputStream(archive)));
+		try {
+			TarArchiveEntry entry = new TarArchiveEntry(entryName);
+			entry.setSize(EXECUTABLE.length);
+			out.putArchiveEntry(entry);
+			out.write(EXECUTABLE);
+			out.closeArchiveEntry();
+		} finally {
+			out.close();
+		}
+		return archive;
+	}
+}
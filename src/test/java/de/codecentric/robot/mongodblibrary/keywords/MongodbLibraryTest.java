@@ -4,12 +4,17 @@ import static com.mongodb.util.JSON.parse;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -17,12 +22,15 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
 import com.mongodb.util.JSON;
 
+import de.codecentric.robot.mongodblibrary.MongodbLibraryException;
 import de.flapdoodle.embed.mongo.MongodExecutable;
 import de.flapdoodle.embed.mongo.MongodStarter;
 import de.flapdoodle.embed.mongo.config.MongodConfig;
@@ -109,6 +117,89 @@ public class MongodbLibraryTest {
 		assertThat((Integer)db1.getCollection("testCol1").findOne((DBObject)parse("{ name : 'Peter'}")).get("age"), is(40));
 	}
 	
+	@Test
+	public void shouldBulkWriteOrdered() {
+		//given
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		String operations = "[{op : 'insert', document : {name : 'Peter', age : 23}},"
+				+ "{op : 'insert', document : {name : 'Eric', age : 40}},"
+				+ "{op : 'update', query : {age : {$lt : 30}}, update : {$inc : {age : 1}}},"
+				+ "{op : 'upsert', query : {name : 'Tom'}, update : {$set : {age : 25}}},"
+				+ "{op : 'replace', query : {name : 'Max'}, document : {name : 'Max', age : 30}},"
+				+ "{op : 'remove', query : {name : 'Eric'}},"
+				+ "{op : 'delete', query : {name : 'Tom'}}]";
+		//when
+		Map<String, Object> result = library.bulkWrite("testCol", operations, "true");
+		//then
+		assertThat((Long) result.get("insertedCount"), is(2L));
+		assertThat((Long) result.get("matchedCount"), is(3L));
+		assertThat((Long) result.get("upsertedCount"), is(1L));
+		assertThat((Long) result.get("deletedCount"), is(2L));
+		assertThat(db1.getCollection("testCol").count(), is(2L));
+		assertThat((Integer) db1.getCollection("testCol").findOne((DBObject) parse("{ name : 'Max'}")).get("age"), is(30));
+	}
+
+	@Test
+	public void shouldBulkWriteUnordered() {
+		//given
+		StringBuilder operations = new StringBuilder("[");
+		for (int i = 0; i < 100; i++) {
+			operations.append(i > 0 ? "," : "").append("{op : 'upsert', query : {_id : " + i + "}, update : {$set : {a : 1}}}");
+		}
+		operations.append("]");
+		//when
+		Map<String, Object> result = library.bulkWrite("testCol", operations.toString(), "false");
+		//then
+		assertThat((Long) result.get("upsertedCount"), is(100L));
+		assertThat(db1.getCollection("testCol").count(), is(100L));
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailBulkWriteOnError() {
+		//given
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{name : 1}"), "myIndex", true);
+		//when
+		library.bulkWrite("testCol", "[{op : 'insert', document : {name : 'Max'}}, {op : 'insert', document : {name : 'Max'}}]", "true");
+	}
+
+	@Test
+	public void shouldFailBulkWriteOnDuplicateOfExistingDocument() {
+		//given
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{_id : 1, name : 'Max'}"));
+		String operations = "[{op : 'insert', document : {_id : 1, name : 'Max'}}, {op : 'insert', document : {_id : 2, name : 'Peter'}}]";
+		//when
+		try {
+			library.bulkWrite("testCol", operations, "true");
+			fail("expected MongodbLibraryException");
+		} catch (MongodbLibraryException e) {
+			//then
+			assertThat(e.getMessage().startsWith("1 operations failed, {insertedCount=0,"), is(true));
+			assertThat(e.getMessage().contains("operation 0: "), is(true));
+			assertThat(db1.getCollection("testCol").count(), is(1L));
+		}
+	}
+
+	@Test
+	public void shouldContinueUnorderedBulkWriteAfterFailedInsert() {
+		//given
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{name : 1}"), "myIndex", true);
+		StringBuilder operations = new StringBuilder("[{op : 'insert', document : {name : 'Max'}}");
+		for (int i = 0; i < 15; i++) {
+			operations.append(",{op : 'insert', document : {name : '" + (i == 0 ? "Max" : "Name" + i) + "'}}");
+		}
+		operations.append("]");
+		//when
+		try {
+			library.bulkWrite("testCol", operations.toString(), "false");
+			fail("expected MongodbLibraryException");
+		} catch (MongodbLibraryException e) {
+			//then
+			assertThat(e.getMessage().startsWith("1 operations failed, {insertedCount=15,"), is(true));
+			assertThat(e.getMessage().contains("operation 1: "), is(true));
+			assertThat(db1.getCollection("testCol").count(), is(15L));
+		}
+	}
+
 	@Test
 	public void shouldImportDocumentsFromArray() throws IOException {
 		//given
@@ -142,6 +233,86 @@ public class MongodbLibraryTest {
 		assertThat(db1.getCollection("testCol").count(), is(16l));
 	}
 	
+	@Test
+	public void shouldImportDocumentsWithDeferredIndexes() throws IOException {
+		//given
+		String path = "src/test/data/testArray.json";
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{name : 1}"), "myIndex", true);
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{age : 1}"), "ageIndex", false);
+		//when
+		Map<String, Object> timings = library.importDocumentsWithDeferredIndexes("testCol", path);
+		//then
+		List<DBObject> indexInfo = db1.getCollection("testCol").getIndexInfo();
+		assertThat(db1.getCollection("testCol").count(), is(2l));
+		assertThat(indexInfo.size(), is(3));
+		assertThat((String) indexInfo.get(1).get("name"), is("myIndex"));
+		assertThat((Boolean) indexInfo.get(1).get("unique"), is(true));
+		assertThat((String) indexInfo.get(2).get("name"), is("ageIndex"));
+		assertThat((Integer) timings.get("indexes"), is(1));
+	}
+
+	@Test
+	public void shouldRejectDuplicatesDuringDeferredImport() {
+		//given
+		String path = "src/test/data/testArray.json";
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{name : 1}"), "myIndex", true);
+		library.importDocuments("testCol", path);
+		//when
+		try {
+			library.importDocumentsWithDeferredIndexes("testCol", path);
+			fail("expected MongoException");
+		} catch (MongoException e) {
+			//then
+			List<DBObject> indexInfo = db1.getCollection("testCol").getIndexInfo();
+			assertThat(db1.getCollection("testCol").count(), is(2l));
+			assertThat(indexInfo.size(), is(2));
+			assertThat((Boolean) indexInfo.get(1).get("unique"), is(true));
+		}
+	}
+
+	@Test
+	public void shouldRebuildIndexesIfDeferredImportFails() {
+		//given
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{name : 1}"), "myIndex", false);
+		//when
+		try {
+			library.importDocumentsWithDeferredIndexes("testCol", "src/test/data/missing.json");
+			fail("expected MongodbLibraryException");
+		} catch (MongodbLibraryException e) {
+			//then
+			List<DBObject> indexInfo = db1.getCollection("testCol").getIndexInfo();
+			assertThat(indexInfo.size(), is(2));
+			assertThat((String) indexInfo.get(1).get("name"), is("myIndex"));
+		}
+	}
+
+	@Test
+	public void shouldImportDirectory() {
+		//given
+		String path = "src/test/data/fixtures";
+		//when
+		Map<String, Object> timings = library.importDirectory(path);
+		//then
+		assertThat(timings.size(), is(2));
+		assertThat(timings.containsKey("users"), is(true));
+		assertThat(db1.getCollection("users").count(), is(2l));
+		assertThat(db1.getCollection("orders").count(), is(3l));
+	}
+
+	@Test
+	public void shouldImportManifest() {
+		//given
+		String path = "src/test/data/fixturesManifest.json";
+		//when
+		Map<String, Object> timings = library.importManifest(path);
+		//then
+		assertThat(timings.size(), is(2));
+		assertThat(db1.getCollection("users").count(), is(2l));
+		assertThat(db1.getCollection("orders").count(), is(3l));
+		assertThat((String) db1.getCollection("users").getIndexInfo().get(1).get("name"), is("myIndex"));
+		assertThat((String) db1.getCollection("orders").getIndexInfo().get(1).get("name"), is("user_1"));
+	}
+
 	@Test
 	public void shouldDropCollection() {
 		//given
@@ -174,6 +345,44 @@ public class MongodbLibraryTest {
 		assertThat(mongoClient.getDatabaseNames().contains(databaseName), is(false));
 	}
 	
+	@Test
+	public void shouldResetDatabase() {
+		//given
+		db1.createCollection("testCappedCol", (DBObject) JSON.parse("{capped : true, size : 100000}"));
+		db1.getCollection("testCappedCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{name : 1}"), "myIndex", true);
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Peter', age: 23}"));
+		//when
+		library.resetDatabase();
+		//then
+		assertThat(db1.getCollection("testCol").count(), is(0L));
+		assertThat(db1.getCollection("testCappedCol").count(), is(0L));
+		assertThat(db1.getCollection("testCappedCol").isCapped(), is(true));
+		List<DBObject> indexInfo = db1.getCollection("testCol").getIndexInfo();
+		assertThat(indexInfo.size(), is(2));
+		assertThat((String) indexInfo.get(1).get("name"), is("myIndex"));
+	}
+	
+	@Test
+	public void shouldResetLargeCollectionByDroppingIt() {
+		//given
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{name : 1}"), "myIndex", true);
+		List<DBObject> documents = new ArrayList<DBObject>();
+		for (int i = 0; i <= 10000; i++) {
+			documents.add(new BasicDBObject("name", "name" + i));
+		}
+		db1.getCollection("testCol").insert(documents);
+		//when
+		library.resetDatabase();
+		//then
+		assertThat(db1.getCollection("testCol").count(), is(0L));
+		List<DBObject> indexInfo = db1.getCollection("testCol").getIndexInfo();
+		assertThat(indexInfo.size(), is(2));
+		assertThat((String) indexInfo.get(1).get("name"), is("myIndex"));
+		assertThat((Boolean) indexInfo.get(1).get("unique"), is(true));
+	}
+	
 	@Test
 	public void shouldCreateCollection() {
 		//given
@@ -310,6 +519,53 @@ public class MongodbLibraryTest {
 		library.indexShouldExist("testCol", "a_1_b_11");
 	}
 	
+	@Test
+	public void shouldNotFailIfQueryUsesIndex() {
+		//given
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{a : 1, b : 1}"));
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{a : 1, b : 2}"));
+		//when
+		library.queryShouldUseIndex("testCol", "{a : 1, b : 2}", "a_1_b_1");
+	}
+
+	@Test(expected = AssertionError.class)
+	public void shouldFailIfQueryDoesNotUseIndex() {
+		//given
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{a : 1, b : 1}"));
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{a : 1, b : 2}"));
+		//when
+		library.queryShouldUseIndex("testCol", "{b : 2}", "a_1_b_1");
+	}
+
+	@Test
+	public void shouldNotFailIfQueryExaminesLessDocuments() {
+		//given
+		db1.getCollection("testCol").ensureIndex((DBObject) JSON.parse("{a : 1}"));
+		for (int i = 0; i < 10; i++) {
+			db1.getCollection("testCol").insert(new BasicDBObject("a", i));
+		}
+		//when
+		library.queryShouldExamineAtMost("testCol", "{a : 5}", "1");
+	}
+
+	@Test(expected = AssertionError.class)
+	public void shouldFailIfQueryExaminesMoreDocuments() {
+		//given
+		for (int i = 0; i < 10; i++) {
+			db1.getCollection("testCol").insert(new BasicDBObject("a", i));
+		}
+		//when
+		library.queryShouldExamineAtMost("testCol", "{a : 5}", "1");
+	}
+
+	@Test
+	public void shouldNotFailIfQueryIsFastEnough() {
+		//given
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{a : 1}"));
+		//when
+		library.queryShouldTakeAtMost("testCol", "{a : 1}", "10000");
+	}
+
 	@Test
 	public void shouldReturnAllDocumentsFromCollection() {
 		//given
@@ -338,6 +594,46 @@ public class MongodbLibraryTest {
 		assertThat((Integer)documents.get(1).get("age"), is(40));
 	}
 
+	@Test
+	public void shouldReturnDocumentsAsJson() {
+		//given
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Peter', age: 23}"));
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Eric', age: 40}"));
+		//when
+		String json = library.getDocumentsAsJson("testCol", "{ age : { $gte: 23 } }");
+		//then
+		List<?> documents = (List<?>) JSON.parse(json);
+		assertThat(documents.size(), is(2));
+		assertThat((Integer) ((DBObject) documents.get(1)).get("age"), is(40));
+	}
+
+	@Test
+	public void shouldReturnDocumentsAsJsonBelowMaxLength() {
+		//given
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		//when
+		Map<String, Object> result = library.getDocumentsAsJsonOrFile("testCol", "{}", "100000");
+		//then
+		assertThat((Integer) result.get("count"), is(1));
+		assertThat(((List<?>) JSON.parse((String) result.get("json"))).size(), is(1));
+	}
+
+	@Test
+	public void shouldSpillDocumentsToFileAboveMaxLength() throws IOException {
+		//given
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Peter', age: 23}"));
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Eric', age: 40}"));
+		//when
+		Map<String, Object> result = library.getDocumentsAsJsonOrFile("testCol", "{}", "10");
+		//then
+		File file = new File((String) result.get("file"));
+		assertThat((Integer) result.get("count"), is(3));
+		assertThat(((List<?>) JSON.parse(IOUtils.toString(new FileReader(file)))).size(), is(3));
+		file.delete();
+	}
+
 	@Test
 	public void shouldRemoveDocumentsFromCollection() {
 		//given
@@ -395,4 +691,228 @@ public class MongodbLibraryTest {
 		//then
 		assertThat(databases.size(), is(2));
 	}
+
+	@Test
+	public void shouldStartupEmbeddedReplicaSet() throws IOException {
+		//given
+		String port = "27030";
+		try {
+			//when
+			library.startupEmbeddedReplicaSet("2.4.5", "rs0", port, "3");
+			//then
+			MongoClient replicaSetClient = new MongoClient("localhost", 27030);
+			DBObject status = replicaSetClient.getDB("admin").command("replSetGetStatus");
+			replicaSetClient.close();
+			assertThat((String) status.get("set"), is("rs0"));
+			assertThat(((List<?>) status.get("members")).size(), is(3));
+		} finally {
+			library.shutdownEmbeddedNodes();
+		}
+	}
+
+	@Test
+	public void shouldStartupEmbeddedNodes() throws IOException {
+		try {
+			//when
+			library.startupEmbeddedNodes("2.4.5", "27030", "2");
+			//then
+			for (int port = 27030; port < 27032; port++) {
+				MongoClient nodeClient = new MongoClient("localhost", port);
+				assertThat(nodeClient.getDB("admin").command("ping").ok(), is(true));
+				nodeClient.close();
+			}
+		} finally {
+			library.shutdownEmbeddedNodes();
+		}
+	}
+
+	@Test
+	public void shouldRunBatch() {
+		//given
+		String operations = "[{op : 'insert', collection : 'testCol', document : [{name : 'Max', age : 22}, {name : 'Peter', age : 23}]},"
+				+ "{op : 'update', collection : 'testCol', query : {age : {$gte : 22}}, update : {$inc : {age : 1}}},"
+				+ "{op : 'remove', collection : 'testCol', query : {name : 'Peter'}},"
+				+ "{op : 'ensureIndex', collection : 'testCol', keys : {name : 1}, unique : true}]";
+		//when
+		List<Map<String, Object>> results = library.runBatch(operations);
+		//then
+		assertThat(results.size(), is(4));
+		assertThat((Integer) results.get(0).get("n"), is(2));
+		assertThat((Integer) results.get(1).get("n"), is(2));
+		assertThat((Integer) results.get(2).get("n"), is(1));
+		assertThat(db1.getCollection("testCol").count(), is(1L));
+		assertThat((Integer) db1.getCollection("testCol").findOne().get("age"), is(23));
+		assertThat(db1.getCollection("testCol").getIndexInfo().size(), is(2));
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailOnUnknownBatchOperation() {
+		//when
+		library.runBatch("[{op : 'unknown', collection : 'testCol'}]");
+	}
+
+	@Test
+	public void shouldReturnSlowOperations() {
+		//given
+		library.startProfiling("robotdb1", "0");
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		db1.getCollection("testCol").findOne((DBObject) JSON.parse("{name : 'Max'}"));
+		//when
+		List<Map<String, Object>> slowOperations;
+		try {
+			slowOperations = library.getSlowOperations();
+		} finally {
+			library.stopProfiling();
+		}
+		//then
+		boolean insertFound = false;
+		for (Map<String, Object> slowOperation : slowOperations) {
+			if ("robotdb1.testCol".equals(slowOperation.get("ns")) && "insert".equals(slowOperation.get("op"))) {
+				insertFound = true;
+			}
+		}
+		assertThat(insertFound, is(true));
+	}
+
+	@Test
+	public void shouldNotFailIfNoOperationExceeds() {
+		//given
+		library.startProfiling("robotdb1", "0");
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		//when
+		try {
+			library.noOperationShouldExceed("10000");
+		} finally {
+			library.stopProfiling();
+		}
+	}
+
+	@Test(expected = AssertionError.class)
+	public void shouldFailIfOperationExceeds() {
+		//given
+		library.startProfiling("robotdb1", "0");
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		db1.getCollection("testCol").findOne((DBObject) JSON.parse("{$where : 'sleep(100) || true'}"));
+		//when
+		try {
+			library.noOperationShouldExceed("50");
+		} finally {
+			library.stopProfiling();
+		}
+	}
+
+	@Test
+	public void shouldRestoreProfilingSettings() {
+		//given
+		CommandResult before = db1.command(new BasicDBObject("profile", -1));
+		library.startProfiling("robotdb1", "0");
+		//when
+		library.stopProfiling();
+		//then
+		CommandResult after = db1.command(new BasicDBObject("profile", -1));
+		assertThat(after.get("was"), is(before.get("was")));
+		assertThat(after.get("slowms"), is(before.get("slowms")));
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailToReturnSlowOperationsWithoutProfiling() {
+		//when
+		library.getSlowOperations();
+	}
+
+	@Test
+	public void shouldCaptureServerStats() {
+		//given
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		//when
+		Map<String, Object> snapshot = library.captureServerStats("snapshot");
+		//then
+		assertThat(snapshot.get("opcounters.insert"), is(notNullValue()));
+		assertThat(((Number) snapshot.get("collections.testCol.count")).longValue(), is(1L));
+	}
+
+	@Test
+	public void shouldReturnStatsDelta() {
+		//given
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Max', age : 22}"));
+		library.captureServerStats("before");
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Peter', age : 23}"));
+		db1.getCollection("testCol").insert((DBObject) JSON.parse("{name : 'Eric', age : 40}"));
+		library.captureServerStats("after");
+		//when
+		Map<String, Object> delta = library.getStatsDelta("before", "after");
+		//then
+		assertThat((Long) delta.get("opcounters.insert"), is(2L));
+		assertThat((Long) delta.get("collections.testCol.count"), is(2L));
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailToReturnStatsDeltaForUnknownLabel() {
+		//when
+		library.getStatsDelta("unknown", "unknown");
+	}
+
+	@Test
+	public void shouldRunLoad() {
+		//when
+		Map<String, Object> result = library.runLoad("testCol", "{op : 'insert', document : {name : 'Max', age : 22}}", "4", "1");
+		//then
+		int operations = (Integer) result.get("operations");
+		assertThat(operations > 0, is(true));
+		assertThat((Long) result.get("errors"), is(0L));
+		assertThat(db1.getCollection("testCol").count(), is((long) operations));
+		assertThat((Double) result.get("p50Millis") <= (Double) result.get("p99Millis"), is(true));
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailToRunLoadWithUnknownOperation() {
+		//when
+		library.runLoad("testCol", "{op : 'unknown'}", "1", "1");
+	}
+
+	@Test(expected = MongodbLibraryException.class)
+	public void shouldFailToRunLoadWithIncompleteOperation() {
+		//when
+		library.runLoad("testCol", "{op : 'update', query : {name : 'Max'}}", "1", "1");
+	}
+
+	@Test
+	public void shouldStartupEmbeddedInMemory() throws IOException {
+		try {
+			//when
+			library.startupEmbeddedInMemory("2.4.5", "27030");
+			//then
+			MongoClient inMemoryClient = new MongoClient("localhost", 27030);
+			assertThat(inMemoryClient.getDB("admin").command("ping").ok(), is(true));
+			inMemoryClient.close();
+		} finally {
+			library.shutdownEmbedded();
+		}
+	}
+
+	@Test
+	public void shouldDeleteDatabaseDirectoryIfStartupInMemoryFails() throws IOException {
+		//given
+		File ramDisk = new File("/dev/shm");
+		File parent = ramDisk.isDirectory() && ramDisk.canWrite() ? ramDisk : new File(System.getProperty("java.io.tmpdir"));
+		int databaseDirs = countDatabaseDirectories(parent);
+		//when
+		try {
+			library.startupEmbeddedInMemory("2.4.5", "invalidPort");
+			fail("expected NumberFormatException");
+		} catch (NumberFormatException e) {
+			//then
+			assertThat(countDatabaseDirectories(parent), is(databaseDirs));
+		}
+	}
+
+	private int countDatabaseDirectories(File parent) {
+		int count = 0;
+		for (String name : parent.list()) {
+			if (name.startsWith("embedmongo-db-")) {
+				count++;
+			}
+		}
+		return count;
+	}
 }